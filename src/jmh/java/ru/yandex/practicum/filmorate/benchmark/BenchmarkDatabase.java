@@ -0,0 +1,126 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import ru.yandex.practicum.filmorate.FilmorateApplication;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Named in-memory H2 database for benchmarks. The schema is migrated by Flyway and seeded
+ * through plain JDBC first, then the application is booted against the seeded data,
+ * so everything the application loads at startup sees the full dataset.
+ */
+public class BenchmarkDatabase implements AutoCloseable {
+
+    private static final int BATCH_SIZE = 10_000;
+
+    private final String url;
+    private final JdbcTemplate jdbcTemplate;
+    private ConfigurableApplicationContext context;
+
+    public BenchmarkDatabase(String name) {
+        this.url = "jdbc:h2:mem:" + name + ";DB_CLOSE_DELAY=-1";
+        DriverManagerDataSource dataSource = new DriverManagerDataSource(url, "sa", "password");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+    }
+
+    public JdbcTemplate getJdbcTemplate() {
+        return jdbcTemplate;
+    }
+
+    /**
+     * Boots the application on this database; {@code args} are extra "--name=value" properties.
+     */
+    public ConfigurableApplicationContext start(String... args) {
+        List<String> allArgs = new ArrayList<>(List.of("--spring.datasource.url=" + url,
+                "--logging.level.ru.yandex.practicum=warn"));
+        allArgs.addAll(List.of(args));
+        context = new SpringApplicationBuilder(FilmorateApplication.class)
+                .web(WebApplicationType.NONE)
+                .run(allArgs.toArray(String[]::new));
+        return context;
+    }
+
+    public void insertUsers(int count) {
+        List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= count; i++) {
+            rows.add(new Object[]{i, "user" + i + "@mail.ru", "user" + i, "user" + i, java.sql.Date.valueOf("1990-01-01")});
+            flushIfFull("INSERT INTO users (id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)", rows);
+        }
+        flush("INSERT INTO users (id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)", rows);
+        jdbcTemplate.execute("ALTER TABLE users ALTER COLUMN id RESTART WITH " + (count + 1));
+    }
+
+    public void insertFilms(int count) {
+        List<Object[]> films = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= count; i++) {
+            films.add(new Object[]{i, "film " + i, "description " + i,
+                    java.sql.Date.valueOf(1950 + i % 70 + "-01-01"), 60 + i % 120});
+            flushIfFull("INSERT INTO films (id, name, description, release_date, duration) VALUES (?, ?, ?, ?, ?)", films);
+        }
+        flush("INSERT INTO films (id, name, description, release_date, duration) VALUES (?, ?, ?, ?, ?)", films);
+        jdbcTemplate.execute("ALTER TABLE films ALTER COLUMN id RESTART WITH " + (count + 1));
+
+        List<Object[]> attributes = new ArrayList<>(BATCH_SIZE);
+        for (int i = 1; i <= count; i++) {
+            attributes.add(new Object[]{i, 1 + i % 5});
+            flushIfFull("INSERT INTO films_mpa (film_id, mpa_id) VALUES (?, ?)", attributes);
+        }
+        flush("INSERT INTO films_mpa (film_id, mpa_id) VALUES (?, ?)", attributes);
+        for (int i = 1; i <= count; i++) {
+            attributes.add(new Object[]{i, 1 + i % 6});
+            flushIfFull("INSERT INTO films_genres (film_id, genre_id) VALUES (?, ?)", attributes);
+        }
+        flush("INSERT INTO films_genres (film_id, genre_id) VALUES (?, ?)", attributes);
+    }
+
+    /**
+     * Spreads {@code likesPerFilm} likes over every film; needs at least {@code likesPerFilm * 10} users.
+     */
+    public void insertLikes(int films, int likesPerFilm) {
+        List<Object[]> likes = new ArrayList<>(BATCH_SIZE);
+        for (int filmId = 1; filmId <= films; filmId++) {
+            for (int k = 0; k < likesPerFilm; k++) {
+                likes.add(new Object[]{filmId, 1 + k * 10 + filmId % 10});
+                flushIfFull("INSERT INTO likes_film (film_id, user_id) VALUES (?, ?)", likes);
+            }
+        }
+        flush("INSERT INTO likes_film (film_id, user_id) VALUES (?, ?)", likes);
+        jdbcTemplate.update("UPDATE films SET like_count = ? WHERE id <= ?", likesPerFilm, films);
+    }
+
+    /**
+     * Writes the {@link DatasetGenerator} dataset; the database must not be seeded otherwise.
+     */
+    public void generate(DatasetGenerator.Spec spec, long seed) {
+        new DatasetGenerator(jdbcTemplate, spec, seed).generate();
+    }
+
+    @Override
+    public void close() {
+        if (context != null) {
+            context.close();
+        }
+        jdbcTemplate.execute("SHUTDOWN");
+    }
+
+    private void flushIfFull(String sql, List<Object[]> rows) {
+        if (rows.size() >= BATCH_SIZE) {
+            flush(sql, rows);
+        }
+    }
+
+    private void flush(String sql, List<Object[]> rows) {
+        if (!rows.isEmpty()) {
+            jdbcTemplate.batchUpdate(sql, rows);
+            rows.clear();
+        }
+    }
+}
@@ -0,0 +1,436 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.flywaydb.core.Flyway;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.sql.Date;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+/**
+ * Fills an empty, migrated database with a synthetic dataset in the shape of production:
+ * at scale 1, 1M users, 100k films, 10k directors, 50M likes, 1M reviews with 5M votes and
+ * 10M feed events. Film popularity, reviews per film and films per director follow Zipf
+ * distributions, with the popular ids spread over the id range. Friends come in dense clusters
+ * of consecutive users plus a few links between clusters.
+ * <p>
+ * The same spec and seed always give the same rows with the same ids: every table is drawn
+ * from its own random stream, so a change to one table leaves the others as they were.
+ * Rows are written in JDBC batches of one transaction each, parent rows before the rows referring
+ * to them; like_count and useful are written along with the rows, as the application keeps them.
+ * <p>
+ * From the command line, with the benchmark profile:
+ * {@code DatasetGenerator --url=jdbc:h2:file:./db/filmorate [--scale=0.01] [--seed=42] [--user=sa] [--password=password]}
+ */
+public class DatasetGenerator {
+
+    private static final int BATCH_SIZE = 10_000;
+    private static final Instant FIRST_EVENT = Instant.parse("2020-01-01T00:00:00Z");
+    private static final String[] WORDS = {"last", "night", "city", "dark", "river", "love", "story", "war",
+            "star", "ghost", "king", "summer", "road", "house", "blood", "dream", "winter", "secret", "island",
+            "fire", "heart", "shadow", "queen", "storm", "silent", "golden", "lost", "wild", "moon", "garden"};
+    private static final String[] EVENT_TYPES = {"LIKE", "REVIEW", "FRIEND"};
+    private static final String[] OPERATIONS = {"ADD", "ADD", "ADD", "REMOVE", "UPDATE"};
+
+    // the random stream of each table
+    private static final int USERS = 1;
+    private static final int DIRECTORS = 2;
+    private static final int FILMS = 3;
+    private static final int LIKES = 4;
+    private static final int FRIENDS = 5;
+    private static final int REVIEWS = 6;
+    private static final int EVENTS = 7;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final Spec spec;
+    private final long seed;
+
+    public DatasetGenerator(JdbcTemplate jdbcTemplate, Spec spec, long seed) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(
+                new DataSourceTransactionManager(Objects.requireNonNull(jdbcTemplate.getDataSource())));
+        this.spec = spec;
+        this.seed = seed;
+    }
+
+    /**
+     * Sizes of a dataset. Every count but the per-user and per-review averages grows with the scale.
+     */
+    public static final class Spec {
+
+        public final int users;
+        public final int films;
+        public final int directors;
+        public final int likesPerUser;
+        public final int friendsPerUser;
+        public final int clusterSize;
+        public final int reviews;
+        public final int votesPerReview;
+        public final int eventsPerUser;
+        public final double zipfExponent;
+
+        public Spec(int users, int films, int directors, int likesPerUser, int friendsPerUser, int clusterSize,
+                    int reviews, int votesPerReview, int eventsPerUser, double zipfExponent) {
+            if (users <= 0 || films <= 0 || directors <= 0 || clusterSize <= 1) {
+                throw new IllegalArgumentException("A dataset needs users, films, directors and clusters of 2+ users");
+            }
+            this.users = users;
+            this.films = films;
+            this.directors = directors;
+            // a user's likes are distinct films, drawn by rejection
+            this.likesPerUser = Math.min(likesPerUser, films / 2);
+            this.friendsPerUser = Math.min(friendsPerUser, clusterSize - 1);
+            this.clusterSize = clusterSize;
+            this.reviews = reviews;
+            this.votesPerReview = Math.min(votesPerReview, users / 2);
+            this.eventsPerUser = eventsPerUser;
+            this.zipfExponent = zipfExponent;
+        }
+
+        public static Spec scaled(double scale) {
+            return new Spec(atLeastOne(1_000_000 * scale), atLeastOne(100_000 * scale), atLeastOne(10_000 * scale),
+                    50, 20, 100, atLeastOne(1_000_000 * scale), 5, 10, 1.0);
+        }
+
+        public long likes() {
+            return (long) users * likesPerUser;
+        }
+
+        private static int atLeastOne(double count) {
+            return Math.max(1, (int) Math.round(count));
+        }
+
+        @Override
+        public String toString() {
+            return users + " users, " + films + " films, " + directors + " directors, ~" + likes() + " likes, ~"
+                    + (long) users * friendsPerUser + " friendships, " + reviews + " reviews, ~"
+                    + (long) reviews * votesPerReview + " votes, ~" + (long) users * eventsPerUser + " events";
+        }
+    }
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>(Map.of("scale", "0.01", "seed", "42",
+                "user", "sa", "password", "password"));
+        for (String arg : args) {
+            int separator = arg.indexOf('=');
+            if (!arg.startsWith("--") || separator < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, separator), arg.substring(separator + 1));
+        }
+        if (!options.containsKey("url")) {
+            throw new IllegalArgumentException("--url is required");
+        }
+        // one open connection keeps an H2 file database open between the batches
+        SingleConnectionDataSource dataSource =
+                new SingleConnectionDataSource(options.get("url"), options.get("user"), options.get("password"), true);
+        Flyway.configure().dataSource(dataSource).load().migrate();
+
+        Spec spec = Spec.scaled(Double.parseDouble(options.get("scale")));
+        long started = System.nanoTime();
+        new DatasetGenerator(new JdbcTemplate(dataSource), spec, Long.parseLong(options.get("seed"))).generate();
+        System.out.printf("Generated %s in %d s%n", spec, (System.nanoTime() - started) / 1_000_000_000L);
+        dataSource.destroy();
+    }
+
+    /**
+     * Writes the whole dataset; the database must have the schema and no films or users yet.
+     */
+    public void generate() {
+        Integer existing = jdbcTemplate.queryForObject(
+                "SELECT (SELECT COUNT(*) FROM films) + (SELECT COUNT(*) FROM users)", Integer.class);
+        if (existing != null && existing > 0) {
+            throw new IllegalStateException("The database already has films or users");
+        }
+        insertUsers();
+        insertDirectors();
+        insertFilms();
+        insertLikes();
+        insertFriendships();
+        insertReviews();
+        insertEvents();
+    }
+
+    private void insertUsers() {
+        SplittableRandom random = random(USERS);
+        Batch users = new Batch("INSERT INTO users (id, email, login, name, birthday) VALUES (?, ?, ?, ?, ?)");
+        LocalDate oldest = LocalDate.of(1950, 1, 1);
+        for (int id = 1; id <= spec.users; id++) {
+            users.add(id, "user" + id + "@mail.ru", "user" + id, word(random) + " " + word(random),
+                    Date.valueOf(oldest.plusDays(random.nextInt(20_000))));
+        }
+        users.flush();
+        restartIdentity("users", "id", spec.users);
+    }
+
+    private void insertDirectors() {
+        SplittableRandom random = random(DIRECTORS);
+        Batch directors = new Batch("INSERT INTO directors (id, name) VALUES (?, ?)");
+        for (int id = 1; id <= spec.directors; id++) {
+            directors.add(id, capitalize(word(random)) + " " + capitalize(word(random)) + " " + id);
+        }
+        directors.flush();
+        restartIdentity("directors", "id", spec.directors);
+    }
+
+    private void insertFilms() {
+        SplittableRandom random = random(FILMS);
+        Zipf directorPopularity = new Zipf(spec.directors, spec.zipfExponent, random);
+        Batch films = new Batch("INSERT INTO films (id, name, description, release_date, duration) VALUES (?, ?, ?, ?, ?)");
+        Batch mpa = new Batch("INSERT INTO films_mpa (film_id, mpa_id) VALUES (?, ?)", films);
+        Batch genres = new Batch("INSERT INTO films_genres (film_id, genre_id) VALUES (?, ?)", films);
+        Batch directors = new Batch("INSERT INTO films_directors (film_id, director_id) VALUES (?, ?)", films);
+        for (int id = 1; id <= spec.films; id++) {
+            films.add(id, capitalize(word(random)) + " " + word(random) + " " + id,
+                    "A film about " + word(random) + " and " + word(random),
+                    Date.valueOf(LocalDate.of(1950 + random.nextInt(73), 1 + random.nextInt(12), 1 + random.nextInt(28))),
+                    60 + random.nextInt(121));
+            mpa.add(id, 1 + random.nextInt(5));
+            // one to three distinct genres out of six
+            int first = random.nextInt(6);
+            int genreCount = 1 + random.nextInt(3);
+            for (int k = 0; k < genreCount; k++) {
+                genres.add(id, 1 + (first + 2 * k) % 6);
+            }
+            if (random.nextInt(10) < 7) {
+                directors.add(id, directorPopularity.next());
+            }
+        }
+        films.flush();
+        mpa.flush();
+        genres.flush();
+        directors.flush();
+        restartIdentity("films", "id", spec.films);
+    }
+
+    private void insertLikes() {
+        SplittableRandom random = random(LIKES);
+        Zipf filmPopularity = new Zipf(spec.films, spec.zipfExponent, random);
+        int[] likeCounts = new int[spec.films + 1];
+        Batch likes = new Batch("INSERT INTO likes_film (film_id, user_id) VALUES (?, ?)");
+        Set<Integer> liked = new HashSet<>();
+        for (int userId = 1; userId <= spec.users; userId++) {
+            int count = spec.likesPerUser == 0 ? 0 : random.nextInt(2 * spec.likesPerUser + 1);
+            liked.clear();
+            while (liked.size() < count) {
+                int filmId = filmPopularity.next();
+                if (liked.add(filmId)) {
+                    likes.add(filmId, userId);
+                    likeCounts[filmId]++;
+                }
+            }
+        }
+        likes.flush();
+
+        Batch counts = new Batch("UPDATE films SET like_count = ? WHERE id = ?");
+        for (int filmId = 1; filmId <= spec.films; filmId++) {
+            if (likeCounts[filmId] > 0) {
+                counts.add(likeCounts[filmId], filmId);
+            }
+        }
+        counts.flush();
+    }
+
+    /**
+     * Users fall into clusters of consecutive ids. Whether two users of a cluster are friends, and
+     * who asked whom, is a hash of the pair, so each pair is decided once. Every user also asks two
+     * users of other clusters, at fixed distances that cannot lead back to them.
+     */
+    private void insertFriendships() {
+        SplittableRandom random = random(FRIENDS);
+        long pairSalt = random.nextLong();
+        Batch friendships = new Batch("INSERT INTO users_friendship (user1_id, user2_id, mutually) VALUES (?, ?, ?)");
+        double inCluster = spec.friendsPerUser / (double) (spec.clusterSize - 1);
+        for (int start = 1; start <= spec.users; start += spec.clusterSize) {
+            int end = Math.min(start + spec.clusterSize - 1, spec.users);
+            for (int a = start; a <= end; a++) {
+                for (int b = a + 1; b <= end; b++) {
+                    long hash = mix(pairSalt ^ ((long) a << 32 | b));
+                    if ((hash >>> 11) * 0x1.0p-53 >= inCluster) {
+                        continue;
+                    }
+                    switch ((int) (hash & 3)) {
+                        case 0:
+                            friendships.add(a, b, false);
+                            break;
+                        case 1:
+                            friendships.add(b, a, false);
+                            break;
+                        default:
+                            friendships.add(a, b, true);
+                            friendships.add(b, a, true);
+                    }
+                }
+            }
+        }
+        if (spec.users > 4 * spec.clusterSize) {
+            int[] distances = {spec.clusterSize + 1 + random.nextInt(spec.users / 4 - spec.clusterSize),
+                    spec.users / 4 + 1 + random.nextInt(spec.users / 4 - 1)};
+            for (int userId = 1; userId <= spec.users; userId++) {
+                for (int distance : distances) {
+                    friendships.add(userId, 1 + (userId - 1 + distance) % spec.users, false);
+                }
+            }
+        }
+        friendships.flush();
+    }
+
+    private void insertReviews() {
+        SplittableRandom random = random(REVIEWS);
+        Zipf filmPopularity = new Zipf(spec.films, spec.zipfExponent, random);
+        Batch reviews = new Batch("INSERT INTO reviews (id, content, isPositive, useful, user_id, film_id) " +
+                                  "VALUES (?, ?, ?, ?, ?, ?)");
+        Batch votes = new Batch("INSERT INTO likes_review (review_id, user_id, grade) VALUES (?, ?, ?)", reviews);
+        Set<Integer> voters = new HashSet<>();
+        List<Object[]> grades = new ArrayList<>();
+        for (int id = 1; id <= spec.reviews; id++) {
+            boolean positive = random.nextInt(3) != 0;
+            int count = spec.votesPerReview == 0 ? 0 : random.nextInt(2 * spec.votesPerReview + 1);
+            int useful = 0;
+            voters.clear();
+            grades.clear();
+            while (voters.size() < count) {
+                int userId = 1 + random.nextInt(spec.users);
+                if (voters.add(userId)) {
+                    int grade = random.nextInt(4) == 0 ? -1 : 1;
+                    grades.add(new Object[]{id, userId, grade});
+                    useful += grade;
+                }
+            }
+            // the review is written with the useful counter of its votes, so it goes first
+            reviews.add(id, (positive ? "Liked the " : "Did not like the ") + word(random) + " " + word(random),
+                    positive, useful, 1 + random.nextInt(spec.users), filmPopularity.next());
+            grades.forEach(votes::add);
+        }
+        reviews.flush();
+        votes.flush();
+        restartIdentity("reviews", "id", spec.reviews);
+    }
+
+    private void insertEvents() {
+        SplittableRandom random = random(EVENTS);
+        Batch events = new Batch("INSERT INTO events (event_id, event_time, event_type, operation, user_id, entity_id) " +
+                                 "VALUES (?, ?, ?, ?, ?, ?)");
+        long total = (long) spec.users * spec.eventsPerUser;
+        for (long id = 1; id <= total; id++) {
+            String type = EVENT_TYPES[random.nextInt(EVENT_TYPES.length)];
+            int entities = type.equals("LIKE") ? spec.films : type.equals("REVIEW") ? Math.max(spec.reviews, 1) : spec.users;
+            events.add(id, Timestamp.from(FIRST_EVENT.plusSeconds(id)), type,
+                    type.equals("REVIEW") ? OPERATIONS[random.nextInt(OPERATIONS.length)] : OPERATIONS[random.nextInt(4)],
+                    1 + random.nextInt(spec.users), 1 + random.nextInt(entities));
+        }
+        events.flush();
+        restartIdentity("events", "event_id", total);
+    }
+
+    private SplittableRandom random(int table) {
+        return new SplittableRandom(mix(seed + table * 0x9E3779B97F4A7C15L));
+    }
+
+    private void restartIdentity(String table, String column, long lastId) {
+        jdbcTemplate.execute("ALTER TABLE " + table + " ALTER COLUMN " + column + " RESTART WITH " + (lastId + 1));
+    }
+
+    private static String word(SplittableRandom random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+
+    private static String capitalize(String word) {
+        return Character.toUpperCase(word.charAt(0)) + word.substring(1);
+    }
+
+    // SplitMix64 finalizer
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * Ids 1..size drawn with Zipf-distributed popularity; which id gets which rank is shuffled,
+     * so the popular ids are not all at the start of the range.
+     */
+    private static final class Zipf {
+
+        private final double[] cdf;
+        private final int[] idOfRank;
+        private final SplittableRandom random;
+
+        private Zipf(int size, double exponent, SplittableRandom random) {
+            this.random = random;
+            cdf = new double[size];
+            double sum = 0;
+            for (int rank = 1; rank <= size; rank++) {
+                sum += 1 / Math.pow(rank, exponent);
+                cdf[rank - 1] = sum;
+            }
+            for (int i = 0; i < size; i++) {
+                cdf[i] /= sum;
+            }
+            idOfRank = new int[size];
+            for (int i = 0; i < size; i++) {
+                idOfRank[i] = i + 1;
+            }
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int id = idOfRank[i];
+                idOfRank[i] = idOfRank[j];
+                idOfRank[j] = id;
+            }
+        }
+
+        private int next() {
+            int index = Arrays.binarySearch(cdf, random.nextDouble());
+            return idOfRank[Math.min(index >= 0 ? index : -index - 1, cdf.length - 1)];
+        }
+    }
+
+    private final class Batch {
+
+        private final String sql;
+        // the batch of the rows this one refers to, written first
+        private final Batch parent;
+        private final List<Object[]> rows = new ArrayList<>(BATCH_SIZE);
+
+        private Batch(String sql) {
+            this(sql, null);
+        }
+
+        private Batch(String sql, Batch parent) {
+            this.sql = sql;
+            this.parent = parent;
+        }
+
+        private void add(Object... row) {
+            rows.add(row);
+            if (rows.size() >= BATCH_SIZE) {
+                flush();
+            }
+        }
+
+        private void flush() {
+            if (parent != null) {
+                parent.flush();
+            }
+            if (!rows.isEmpty()) {
+                // one commit per batch rather than per row
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(sql, rows));
+                rows.clear();
+            }
+        }
+    }
+}
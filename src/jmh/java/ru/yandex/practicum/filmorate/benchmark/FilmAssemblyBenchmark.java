@@ -0,0 +1,65 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * FilmStorage.getListFilmsByListId for a shuffled list of {@code films} ids
+ * over a likes_film table of {@code films * likesPerFilm} rows (10k ids x 1M likes by default).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class FilmAssemblyBenchmark {
+
+    @Param("10000")
+    private int films;
+
+    @Param("100")
+    private int likesPerFilm;
+
+    private BenchmarkDatabase database;
+    private FilmStorage filmStorage;
+    private List<List<Integer>> idLists;
+    private int invocation;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase("film_assembly");
+        database.insertUsers(likesPerFilm * 10);
+        database.insertFilms(films);
+        database.insertLikes(films, likesPerFilm);
+        filmStorage = database.start().getBean(FilmStorage.class);
+
+        // Two alternating orders keep H2 from reusing the previous result of an identical query.
+        Random random = new Random(42);
+        idLists = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            List<Integer> ids = IntStream.rangeClosed(1, films).boxed().collect(Collectors.toCollection(ArrayList::new));
+            Collections.shuffle(ids, random);
+            idLists.add(ids);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Film> getListFilmsByListId() {
+        return filmStorage.getListFilmsByListId(idLists.get(invocation++ & 1));
+    }
+}
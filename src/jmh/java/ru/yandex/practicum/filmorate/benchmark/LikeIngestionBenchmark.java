@@ -0,0 +1,68 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeWriteBehindQueue;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PUT /films/{id}/like/{userId} throughput with 8 concurrent clients,
+ * synchronous versus write-behind ({@code writeBehind}) like storage.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(8)
+@Fork(1)
+public class LikeIngestionBenchmark {
+
+    @Param({"false", "true"})
+    private boolean writeBehind;
+
+    @Param("1000")
+    private int films;
+
+    @Param("10000")
+    private int users;
+
+    private BenchmarkDatabase database;
+    private FilmService filmService;
+    private UserService userService;
+    private LikeWriteBehindQueue likeQueue;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase("like_ingestion");
+        database.insertUsers(users);
+        database.insertFilms(films);
+        var context = database.start("--filmorate.likes.write-behind.enabled=" + writeBehind);
+        filmService = context.getBean(FilmService.class);
+        userService = context.getBean(UserService.class);
+        likeQueue = context.getBean(LikeWriteBehindQueue.class);
+    }
+
+    @TearDown(Level.Iteration)
+    public void drain() {
+        if (writeBehind) {
+            likeQueue.flush();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public Film like() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return filmService.like(1 + random.nextInt(films), 1 + random.nextInt(users), userService,
+                random.nextInt(4) != 0);
+    }
+}
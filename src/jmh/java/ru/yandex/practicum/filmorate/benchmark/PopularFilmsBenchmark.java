@@ -0,0 +1,54 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.service.FilmService;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /films/popular latency percentiles with 4 concurrent readers over random
+ * genre/year facets ({@code films} films, {@code likesPerFilm} likes each).
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+@Fork(1)
+public class PopularFilmsBenchmark {
+
+    @Param("10000")
+    private int films;
+
+    @Param("100")
+    private int likesPerFilm;
+
+    private BenchmarkDatabase database;
+    private FilmService filmService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        database = new BenchmarkDatabase("popular_films");
+        database.insertUsers(likesPerFilm * 10);
+        database.insertFilms(films);
+        database.insertLikes(films, likesPerFilm);
+        filmService = database.start().getBean(FilmService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilms() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Integer genreId = random.nextBoolean() ? 1 + random.nextInt(6) : null;
+        String year = random.nextBoolean() ? String.valueOf(1950 + random.nextInt(70)) : null;
+        return filmService.getPopularFilms(10, genreId, year);
+    }
+}
@@ -0,0 +1,72 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import ru.yandex.practicum.filmorate.dao.RecommendationEngine;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * GET /users/{id}/recommendations neighbour search over {@code users} x {@code films}
+ * with {@code likesPerUser} likes per user on average and Zipf-distributed film popularity.
+ * The matrix is filled in memory, without a database; at this size the replaced
+ * SQL does not finish in H2 at all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class RecommendationBenchmark {
+
+    @Param("1000000")
+    private int users;
+
+    @Param("100000")
+    private int films;
+
+    @Param("20")
+    private int likesPerUser;
+
+    private RecommendationEngine engine;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        engine = new RecommendationEngine(null);
+        SplittableRandom random = new SplittableRandom(42);
+        double[] cdf = zipfCdf(films, 1.0);
+        for (int userId = 1; userId <= users; userId++) {
+            int likes = 1 + random.nextInt(2 * likesPerUser - 1);
+            for (int i = 0; i < likes; i++) {
+                engine.addLike(userId, 1 + sample(cdf, random.nextDouble()));
+            }
+        }
+    }
+
+    @Benchmark
+    public List<Integer> recommend() {
+        return engine.recommend(1 + ThreadLocalRandom.current().nextInt(users));
+    }
+
+    private static double[] zipfCdf(int size, double exponent) {
+        double[] cdf = new double[size];
+        double sum = 0;
+        for (int rank = 1; rank <= size; rank++) {
+            sum += 1 / Math.pow(rank, exponent);
+            cdf[rank - 1] = sum;
+        }
+        for (int i = 0; i < size; i++) {
+            cdf[i] /= sum;
+        }
+        return cdf;
+    }
+
+    private static int sample(double[] cdf, double u) {
+        int index = Arrays.binarySearch(cdf, u);
+        return Math.min(index >= 0 ? index : -index - 1, cdf.length - 1);
+    }
+}
@@ -0,0 +1,127 @@
+package ru.yandex.practicum.filmorate.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.event.EventStorage;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of the storage read paths and of review voting, one benchmark method per call, over the
+ * {@link DatasetGenerator} dataset at {@code scale} (0.01: 10k users, 1k films, 500k likes, 10k reviews).
+ * Run it with {@code -prof gc} for the allocation rate, and {@code -p scale=...} for other sizes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class StorageBenchmark {
+
+    @Param("0.01")
+    private double scale;
+
+    @Param("42")
+    private long seed;
+
+    private DatasetGenerator.Spec spec;
+    private BenchmarkDatabase database;
+    private FilmStorage filmStorage;
+    private UserStorage userStorage;
+    private ReviewStorage reviewStorage;
+    private EventStorage eventStorage;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        spec = DatasetGenerator.Spec.scaled(scale);
+        database = new BenchmarkDatabase("storage");
+        database.generate(spec, seed);
+        ConfigurableApplicationContext context = database.start();
+        filmStorage = context.getBean(FilmStorage.class);
+        userStorage = context.getBean(UserStorage.class);
+        reviewStorage = context.getBean(ReviewStorage.class);
+        eventStorage = context.getBean(EventStorage.class);
+        userService = context.getBean(UserService.class);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        database.close();
+    }
+
+    @Benchmark
+    public List<Film> getAllFilms() {
+        return filmStorage.getAllFilms();
+    }
+
+    @Benchmark
+    public Optional<Film> getFilmById() {
+        return filmStorage.getFilmById(randomFilm());
+    }
+
+    @Benchmark
+    public List<Film> topNFilms() {
+        return filmStorage.topNFilms(10);
+    }
+
+    @Benchmark
+    public List<Film> getPopularFilms() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        return filmStorage.getPopularFilms(10, 1 + random.nextInt(6), String.valueOf(1950 + random.nextInt(70)));
+    }
+
+    @Benchmark
+    public List<Film> searchFilmsByString() {
+        // film names end with the film id, so the query matches the films whose id contains it
+        return filmStorage.searchFilmsByString(String.valueOf(randomFilm() % 1000), "title");
+    }
+
+    @Benchmark
+    public List<Film> getRecommendations() {
+        return userStorage.getRecommendations(randomUser());
+    }
+
+    @Benchmark
+    public List<User> getAllFriends() {
+        return userService.getAllFriends(randomUser());
+    }
+
+    @Benchmark
+    public CursorPage<Event> getFeed() {
+        return eventStorage.findByUserId(randomUser(), 0, 100);
+    }
+
+    @Benchmark
+    public void voteForReview() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int reviewId = 1 + random.nextInt(spec.reviews);
+        int userId = randomUser();
+        switch (random.nextInt(4)) {
+            case 0: reviewStorage.like(reviewId, userId); break;
+            case 1: reviewStorage.dislike(reviewId, userId); break;
+            case 2: reviewStorage.deleteLike(reviewId, userId); break;
+            default: reviewStorage.deleteDislike(reviewId, userId);
+        }
+    }
+
+    private int randomFilm() {
+        return 1 + ThreadLocalRandom.current().nextInt(spec.films);
+    }
+
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(spec.users);
+    }
+}
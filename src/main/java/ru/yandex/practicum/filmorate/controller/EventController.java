@@ -1,9 +1,12 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.service.EventService;
 
@@ -15,8 +18,25 @@ public class EventController {
 
     private final EventService eventService;
 
+    /**
+     * Returns the user's events after sinceEventId, oldest first. The X-Next-Cursor header
+     * is always set to the sinceEventId for the next poll; a full page means more events
+     * are already waiting. Without sinceEventId and limit the whole feed is returned.
+     */
     @GetMapping("/users/{id}/feed")
-    public List<Event> findEvents(@PathVariable(value = "id") int userId) {
-        return eventService.findByUserId(userId);
+    public ResponseEntity<List<Event>> findEvents(@PathVariable(value = "id") int userId,
+                                                  @RequestParam(required = false) Integer sinceEventId,
+                                                  @RequestParam(required = false) Integer limit) {
+        CursorPage<Event> page;
+        if (sinceEventId == null && limit == null) {
+            List<Event> events = eventService.findByUserId(userId);
+            page = new CursorPage<>(events, events.isEmpty() ? 0 : events.get(events.size() - 1).getId());
+        } else {
+            page = eventService.findByUserId(userId, sinceEventId == null ? 0 : sinceEventId,
+                    limit == null ? EventService.DEFAULT_PAGE_SIZE : limit);
+        }
+        return ResponseEntity.ok()
+                .header(CursorPage.NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()))
+                .body(page.getItems());
     }
 }
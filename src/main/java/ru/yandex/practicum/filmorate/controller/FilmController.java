@@ -1,23 +1,45 @@
 package ru.yandex.practicum.filmorate.controller;
 
-import lombok.RequiredArgsConstructor;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.service.FilmService;
 import ru.yandex.practicum.filmorate.service.UserService;
 
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
+import java.time.Duration;
 import java.util.List;
 
 @RestController
-@RequiredArgsConstructor
 @RequestMapping(value = "films")
 @Slf4j
 public class FilmController {
 
+    private static final String NDJSON = "application/x-ndjson";
+
     private final FilmService filmService;
     private final UserService userService;
+    private final ObjectMapper objectMapper;
+    private final Duration exportTimeout;
+
+    public FilmController(FilmService filmService, UserService userService, ObjectMapper objectMapper,
+                          @Value("${filmorate.export.timeout:PT1H}") Duration exportTimeout) {
+        this.filmService = filmService;
+        this.userService = userService;
+        this.objectMapper = objectMapper;
+        this.exportTimeout = exportTimeout;
+    }
 
     @PutMapping
     public Film updateFilm(@Valid @RequestBody Film film) {
@@ -29,10 +51,47 @@ public class FilmController {
         return filmService.addFilm(film);
     }
 
+    /**
+     * Returns films ordered by id, one page at a time. The X-Next-Cursor header holds
+     * the afterId of the next page and is absent on the last one. all=true returns the whole table.
+     */
     @GetMapping
-    public List<Film> getAllFilms() {
-        log.debug("get all films");
-        return filmService.getAllFilms();
+    public ResponseEntity<List<Film>> getAllFilms(@RequestParam(required = false, defaultValue = "0") int afterId,
+                                                  @RequestParam(required = false, defaultValue = "100") int limit,
+                                                  @RequestParam(required = false, defaultValue = "false") boolean all) {
+        if (all) {
+            log.debug("get all films");
+            return ResponseEntity.ok(filmService.getAllFilms());
+        }
+        log.debug("get films after id {}, limit {}", afterId, limit);
+        CursorPage<Film> page = filmService.getFilmsPage(afterId, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CursorPage.NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
+    }
+
+    /**
+     * Streams the whole catalog as newline-delimited JSON, one film per line.
+     * The stream may outlive the default async request timeout, so it has its own filmorate.export.timeout.
+     */
+    @GetMapping(value = "export", produces = NDJSON)
+    public WebAsyncTask<Void> exportFilms(HttpServletResponse response) {
+        log.debug("export films");
+        response.setContentType(NDJSON);
+        ObjectWriter writer = objectMapper.writer().without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+        return new WebAsyncTask<>(exportTimeout.toMillis(), () -> {
+            ServletOutputStream out = response.getOutputStream();
+            try (JsonGenerator generator = objectMapper.getFactory().createGenerator(out)) {
+                generator.setRootValueSeparator(null);
+                filmService.exportFilms(film -> {
+                    writer.writeValue(generator, film);
+                    generator.writeRaw('\n');
+                });
+            }
+            return null;
+        });
     }
 
     @GetMapping("{filmId}")
@@ -79,6 +138,17 @@ public class FilmController {
 		return filmService.searchFilmsByString(query, by);
 	}
 
+	/**
+	 * Typeahead for the search box: ids and names of films and/or directors having a word
+	 * that starts with the query, most liked first. Films are not loaded.
+	 */
+	@GetMapping("search/suggest")
+	public List<Suggestion> suggest(@RequestParam String query,
+									@RequestParam(required = false, defaultValue = "title,director") String by,
+									@RequestParam(required = false, defaultValue = "10") int limit) {
+		return filmService.suggest(query, by, limit);
+	}
+
 
     @GetMapping("/director/{directorId}")
     public List<Film> getFilmsByDirector(@PathVariable int directorId,
@@ -6,8 +6,8 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
+import ru.yandex.practicum.filmorate.dao.ReferenceDataRegistry;
 import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
-import ru.yandex.practicum.filmorate.service.FilmService;
 
 import java.util.List;
 
@@ -17,17 +17,17 @@ import java.util.List;
 @RequestMapping(value = "genres")
 @Slf4j
 public class GenreController {
-    private final FilmService filmService;
+    private final ReferenceDataRegistry referenceData;
 
     @GetMapping
     public List<Genre> getAllGenres() {
         log.debug("get all genres");
-        return filmService.getAllGenres();
+        return referenceData.getAllGenres();
     }
 
     @GetMapping("/{id}")
     public Genre getGenreById(@PathVariable Integer id) {
         log.debug("get genre by id {}", id);
-        return filmService.getGenreById(id);
+        return referenceData.getGenreById(id);
     }
 }
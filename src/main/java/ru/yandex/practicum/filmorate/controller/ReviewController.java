@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.controller;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 import ru.yandex.practicum.filmorate.service.ReviewService;
 
 import javax.validation.Valid;
@@ -20,10 +23,20 @@ public class ReviewController {
         this.reviewService = reviewService;
     }
 
+    /**
+     * Returns the reviews of the film, or of all films, most useful first, one page at a time.
+     * The X-Next-Cursor header holds the cursor of the next page and is absent on the last one.
+     */
     @GetMapping()
-    public List<Review> getReviews(@RequestParam(defaultValue = "-1") int filmId,
-                                   @RequestParam(defaultValue = "10") int count){
-        return reviewService.getReviews(filmId, count);
+    public ResponseEntity<List<Review>> getReviews(@RequestParam(defaultValue = "-1") int filmId,
+                                                   @RequestParam(defaultValue = "10") int count,
+                                                   @RequestParam(required = false) String cursor){
+        ReviewPage page = reviewService.getReviews(filmId, cursor, count);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CursorPage.NEXT_CURSOR_HEADER, page.getNextCursor().toString());
+        }
+        return response.body(page.getItems());
     }
 
     @PostMapping()
@@ -2,8 +2,11 @@ package ru.yandex.practicum.filmorate.controller;
 
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Recommendations;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.service.UserService;
 
@@ -29,10 +32,25 @@ public class UserController {
         return userService.addUser(user);
     }
 
+    /**
+     * Returns users ordered by id, one page at a time. The X-Next-Cursor header holds
+     * the afterId of the next page and is absent on the last one. all=true returns the whole table.
+     */
     @GetMapping
-    public List<User> getAllUsers() {
-        log.debug("get all users");
-        return userService.getAllUsers();
+    public ResponseEntity<List<User>> getAllUsers(@RequestParam(required = false, defaultValue = "0") int afterId,
+                                                  @RequestParam(required = false, defaultValue = "100") int limit,
+                                                  @RequestParam(required = false, defaultValue = "false") boolean all) {
+        if (all) {
+            log.debug("get all users");
+            return ResponseEntity.ok(userService.getAllUsers());
+        }
+        log.debug("get users after id {}, limit {}", afterId, limit);
+        CursorPage<User> page = userService.getUsersPage(afterId, limit);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNextCursor() != null) {
+            response.header(CursorPage.NEXT_CURSOR_HEADER, String.valueOf(page.getNextCursor()));
+        }
+        return response.body(page.getItems());
     }
 
     @GetMapping("/{userId}")
@@ -61,14 +79,22 @@ public class UserController {
         return userService.getIntersectionFriends(id, otherId);
     }
 
+    @GetMapping("/{id}/friends/suggestions")
+    public List<User> getFriendSuggestions(@PathVariable int id,
+                                           @RequestParam(required = false, defaultValue = "10") int limit) {
+        return userService.getFriendSuggestions(id, limit);
+    }
+
     @DeleteMapping("/{userId}")
     public void deleteUser(@PathVariable int userId) {
         userService.deleteUser(userId);
     }
 
     @GetMapping("/{id}/recommendations")
-    public List<Film> getRecommendations(@PathVariable Integer id) {
-
-        return userService.getRecommendations(id);
+    public ResponseEntity<List<Film>> getRecommendations(@PathVariable Integer id) {
+        Recommendations recommendations = userService.getRecommendations(id);
+        return ResponseEntity.ok()
+                .lastModified(recommendations.getComputedAt())
+                .body(recommendations.getFilms());
     }
 }
@@ -24,6 +24,8 @@ import java.util.Objects;
 public class DirectorDbStorage implements DirectorStorage {
 
     private final JdbcTemplate jdbcTemplate;
+    private final FilmCache filmCache;
+    private final SearchIndex searchIndex;
 
     @Override
     public Director get(int id) {
@@ -51,6 +53,8 @@ public class DirectorDbStorage implements DirectorStorage {
             throw new NotFoundException("Director with id=" + director.getId() + " not found");
         }
 
+        filmCache.invalidateAll();
+        searchIndex.putDirector(director.getId(), director.getName());
         log.debug("Director with id={} updated", director.getId());
 
         return director;
@@ -68,6 +72,7 @@ public class DirectorDbStorage implements DirectorStorage {
         }, key);
 
         director.setId(Objects.requireNonNull(key.getKey()).intValue());
+        searchIndex.putDirector(director.getId(), director.getName());
 
         log.debug("Added director with id={}", director.getId());
 
@@ -84,6 +89,8 @@ public class DirectorDbStorage implements DirectorStorage {
             throw new NotFoundException("Director with id=" + id + " not found");
         }
 
+        filmCache.invalidateAll();
+        searchIndex.removeDirector(id);
         log.debug("Director with id={} removed", id);
 
     }
@@ -1,51 +1,203 @@
 package ru.yandex.practicum.filmorate.dao;
 
-import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.jdbc.core.JdbcTemplate;
-import org.springframework.jdbc.core.simple.SimpleJdbcInsert;
 import org.springframework.stereotype.Repository;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.OperationType;
 import ru.yandex.practicum.filmorate.storage.event.EventStorage;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
 
+/**
+ * Event feed storage with asynchronous, batched appends.
+ * <p>
+ * {@link #add} assigns the next event id in memory and puts the event on a lock-free
+ * queue; a single background thread writes queued events with one JDBC batch per
+ * round, in id order, so every user's events keep the order they were added in.
+ * Until an event is committed it stays in the pending map, and reads merge it
+ * with the stored ones, so a user always sees their own events.
+ * <p>
+ * Feed reads only return events up to the published id. Taking an id, putting the event
+ * in the pending map and publishing the id happen under one short lock, so every id at
+ * or below the published one is already pending or stored: a reader never returns an
+ * event while an older one is still being added, and a since-cursor can never skip one.
+ * <p>
+ * Event ids come from this process, seeded with MAX(event_id) at startup, so only
+ * one application instance may write to the events table.
+ */
 @Slf4j
 @Repository
-@RequiredArgsConstructor
 public class EventDbStorage implements EventStorage {
 
+    // events of users deleted in the meantime are dropped rather than failing the batch,
+    // and rows already written by a partly failed batch are skipped when it is retried
+    static final String SQL_INSERT_EVENT =
+            "INSERT INTO events (event_id, event_time, event_type, operation, user_id, entity_id) " +
+            "SELECT ?1, ?2, ?3, ?4, ?5, ?6 WHERE EXISTS (SELECT 1 FROM users WHERE id = ?5) " +
+            "AND NOT EXISTS (SELECT 1 FROM events WHERE event_id = ?1)";
+    private static final String SQL_FIND_LAST_EVENT_ID = "SELECT COALESCE(MAX(event_id), 0) FROM events";
+    static final String SQL_FIND_BY_USER_ID =
+            "SELECT * FROM events WHERE user_id = ? AND event_id > ? ORDER BY event_id LIMIT ?";
+
     private final JdbcTemplate jdbcTemplate;
+    private final Duration flushInterval;
+    private final int batchSize;
+
+    private final Object addLock = new Object();
+    // guarded by addLock
+    private int lastId;
+    private volatile int published;
+    private final Queue<Event> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger queued = new AtomicInteger();
+    private final NavigableMap<Integer, Event> pending = new ConcurrentSkipListMap<>();
+    private final Object flushLock = new Object();
+    private volatile boolean running;
+    private Thread flusher;
+
+    public EventDbStorage(JdbcTemplate jdbcTemplate,
+                          @Value("${filmorate.events.flush-interval:50ms}") Duration flushInterval,
+                          @Value("${filmorate.events.batch-size:500}") int batchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+    }
+
+    @PostConstruct
+    public void start() {
+        synchronized (addLock) {
+            lastId = jdbcTemplate.queryForObject(SQL_FIND_LAST_EVENT_ID, Integer.class);
+            published = lastId;
+        }
+        running = true;
+        flusher = new Thread(this::runFlusher, "event-flusher");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
 
     @Override
     public Event add(Event event) {
-        SimpleJdbcInsert simpleJdbcInsert = new SimpleJdbcInsert(jdbcTemplate)
-                .withTableName("events")
-                .usingGeneratedKeyColumns("event_id");
-        Map<String, Object> values = new HashMap<>();
-        values.put("event_time", new Timestamp(event.getTimestamp()));
-        values.put("event_type", event.getEventType().name());
-        values.put("operation", event.getOperation().name());
-        values.put("user_id", event.getUserId());
-        values.put("entity_id", event.getEntityId());
-        event.setId(simpleJdbcInsert.executeAndReturnKey(values).intValue());
-
+        Event stored;
+        // ids are published in order, with nothing between taking an id and publishing it that can fail
+        synchronized (addLock) {
+            stored = new Event(lastId + 1, event.getTimestamp(), event.getEventType(),
+                    event.getOperation(), event.getUserId(), event.getEntityId());
+            pending.put(stored.getId(), stored);
+            lastId = stored.getId();
+            published = stored.getId();
+        }
+        event.setId(stored.getId());
+        queue.add(stored);
+        if (queued.incrementAndGet() == batchSize) {
+            LockSupport.unpark(flusher);
+        }
         log.debug("New event added: {}", event);
-
         return event;
     }
 
     @Override
     public List<Event> findByUserId(int userId) {
-        String sql = "SELECT * FROM EVENTS WHERE USER_ID = ?";
-        return jdbcTemplate.query(sql, this::mapRowToEvent, userId);
+        return findByUserId(userId, 0, Integer.MAX_VALUE).getItems();
+    }
+
+    @Override
+    public CursorPage<Event> findByUserId(int userId, int sinceEventId, int limit) {
+        int upTo = published;
+        // pending is read first: an event flushed in between is then found in the table
+        NavigableMap<Integer, Event> events = new TreeMap<>();
+        for (Event event : pending.subMap(sinceEventId, false, upTo, true).values()) {
+            if (event.getUserId() == userId) {
+                events.put(event.getId(), event);
+            }
+        }
+        jdbcTemplate.query(SQL_FIND_BY_USER_ID, rs -> {
+            Event event = mapRowToEvent(rs, 0);
+            if (event.getId() <= upTo) {
+                events.put(event.getId(), event);
+            }
+        }, userId, sinceEventId, limit);
+        List<Event> page = new ArrayList<>(limit < events.size() ? limit : events.size());
+        for (Event event : events.values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(event);
+        }
+        return new CursorPage<>(page, page.isEmpty() ? sinceEventId : page.get(page.size() - 1).getId());
+    }
+
+    /**
+     * Writes every event queued so far; returns how many were taken from the queue.
+     */
+    public int flush() {
+        synchronized (flushLock) {
+            List<Event> batch = new ArrayList<>();
+            for (Event event = queue.poll(); event != null; event = queue.poll()) {
+                batch.add(event);
+            }
+            if (batch.isEmpty()) {
+                return 0;
+            }
+            queued.addAndGet(-batch.size());
+            batch.sort(Comparator.comparingInt(Event::getId));
+            try {
+                jdbcTemplate.batchUpdate(SQL_INSERT_EVENT, batch, batchSize, (ps, event) -> {
+                    ps.setInt(1, event.getId());
+                    ps.setTimestamp(2, new Timestamp(event.getTimestamp()));
+                    ps.setString(3, event.getEventType().name());
+                    ps.setString(4, event.getOperation().name());
+                    ps.setInt(5, event.getUserId());
+                    ps.setInt(6, event.getEntityId());
+                });
+            } catch (RuntimeException e) {
+                // still pending, so still visible; written with the next round
+                queue.addAll(batch);
+                queued.addAndGet(batch.size());
+                throw e;
+            }
+            batch.forEach(event -> pending.remove(event.getId()));
+            log.debug("{} events written", batch.size());
+            return batch.size();
+        }
+    }
+
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    @PreDestroy
+    public void stop() throws InterruptedException {
+        running = false;
+        LockSupport.unpark(flusher);
+        flusher.join(flushInterval.toMillis() * 10 + 1000);
+        flush();
+    }
+
+    private void runFlusher() {
+        while (running) {
+            if (queued.get() < batchSize) {
+                LockSupport.parkNanos(this, flushInterval.toNanos());
+            }
+            try {
+                flush();
+            } catch (RuntimeException e) {
+                log.error("event flush failed, {} events kept for retry", pending.size(), e);
+                LockSupport.parkNanos(this, flushInterval.toNanos());
+            }
+        }
     }
 
     private Event mapRowToEvent(ResultSet rs, int rowNum) throws SQLException {
@@ -0,0 +1,122 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/**
+ * Bounded LRU cache of hydrated films keyed by id.
+ * Films are copied on the way in and out, so callers may change what they get without touching the cache.
+ * Writers invalidate entries; a load started before an invalidation is never cached.
+ * Hit and miss counters are published as filmorate.film.cache.* metrics.
+ */
+@Component
+@Slf4j
+public class FilmCache {
+
+    private final Map<Integer, Film> films;
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private long version;
+
+    public FilmCache(@Value("${filmorate.film-cache.max-size:10000}") int maxSize, MeterRegistry meterRegistry) {
+        this.films = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Film> eldest) {
+                return size() > maxSize;
+            }
+        };
+        FunctionCounter.builder("filmorate.film.cache.hits", hits, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("filmorate.film.cache.misses", misses, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("filmorate.film.cache.size", this, FilmCache::size).register(meterRegistry);
+    }
+
+    public synchronized Optional<Film> get(int filmId) {
+        Film film = films.get(filmId);
+        if (film == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(copy(film));
+    }
+
+    /**
+     * Returns a stamp to pass to {@link #put(Film, long)} after loading a film from the DB.
+     */
+    public synchronized long version() {
+        return version;
+    }
+
+    public synchronized void put(Film film, long loadedAtVersion) {
+        if (loadedAtVersion == version) {
+            films.put(film.getId(), copy(film));
+        }
+    }
+
+    /**
+     * Inside a transaction the entry is dropped again once the transaction completes,
+     * so a film re-read before the commit does not stay cached.
+     */
+    public void invalidate(int filmId) {
+        evict(filmId);
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    evict(filmId);
+                }
+            });
+        }
+    }
+
+    private synchronized void evict(int filmId) {
+        version++;
+        films.remove(filmId);
+    }
+
+    public synchronized void invalidateAll() {
+        version++;
+        films.clear();
+        log.debug("film cache cleared");
+    }
+
+    public synchronized int size() {
+        return films.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    private static Film copy(Film film) {
+        Film copy = new Film(film.getName(), film.getDescription(), film.getReleaseDate(), film.getDuration());
+        copy.setId(film.getId());
+        copy.setMpa(film.getMpa());
+        copy.setGenres(new ArrayList<>(film.getGenres()));
+        copy.setLikes(new HashSet<>(film.getLikes()));
+        copy.setDirectors(film.getDirectors().stream()
+                .map(director -> new Director(director.getId(), director.getName()))
+                .collect(Collectors.toSet()));
+        return copy;
+    }
+}
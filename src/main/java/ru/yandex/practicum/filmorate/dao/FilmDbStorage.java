@@ -9,19 +9,23 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
-import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmConsumer;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
+import java.io.IOException;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.*;
-import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Component
@@ -31,20 +35,21 @@ import java.util.stream.Collectors;
 public class FilmDbStorage implements FilmStorage {
 
     private final JdbcTemplate jdbcTemplate;
-
-    private static final String SQL_FIND_ALL_GENRES = "SELECT * FROM genres";
-    private static final String SQL_FIND_ALL_MPA = "SELECT * FROM mpa";
-    private static final String SQL_FIND_ALL_FILMS = "SELECT * FROM films";
+    private final FilmHydrator filmHydrator;
+    private final FilmCache filmCache;
+    private final ReferenceDataRegistry referenceData;
+    private final FilmExporter filmExporter;
+    private final PopularityIndex popularityIndex;
+    private final TopReviewsCache topReviewsCache;
+    private final SearchIndex searchIndex;
+    private final RecommendationEngine recommendationEngine;
+
+    static final String SQL_FIND_FILMS_PAGE = "SELECT id FROM films WHERE id > ? ORDER BY id LIMIT ?";
     private static final String SQL_INSERT_NEW_FILM =
             "insert into films (name, description, release_date, duration) values (?, ?, ?, ?)";
     private static final String SQL_UPDATE_FILM =
             "merge into films (id, name, description, release_date, duration) values (?, ?, ?, ?, ?)";
 
-    private static final String SQL_FIND_ALL_GENRES_BY_FILM_ID =
-            "SELECT genre_id FROM films_genres WHERE film_id = ?";
-
-    private static final String SQL_FIND_MPA_BY_FILM_ID =
-            "SELECT mpa_id  FROM films_mpa WHERE film_id = ?";
     private static final String SQL_DELETE_FILM_MPA =
             "DELETE FROM films_mpa WHERE film_id = ?";
     private static final String SQL_ADD_FILM_MPA =
@@ -52,16 +57,42 @@ public class FilmDbStorage implements FilmStorage {
     private static final String SQL_DELETE_FILM_GENRES =
             "DELETE FROM films_genres WHERE film_id = ?";
 
-    private static final String SQL_ADD_FILM_LIKE =
-            "INSERT INTO likes_film (film_id, user_id) VALUES (?, ?)";
+    static final String SQL_LOCK_FILM =
+            "SELECT id FROM films WHERE id = ? FOR UPDATE";
+    static final String SQL_ADD_FILM_LIKE =
+            "INSERT INTO likes_film (film_id, user_id) SELECT ?1, ?2 " +
+            "WHERE NOT EXISTS (SELECT 1 FROM likes_film WHERE film_id = ?1 AND user_id = ?2)";
 
-    private static final String SQL_REMOVE_FILM_LIKE =
+    static final String SQL_REMOVE_FILM_LIKE =
             "DELETE FROM likes_film WHERE (film_id= ? AND user_id= ?) ";
+    static final String SQL_LOCK_FILMS =
+            "SELECT id FROM films WHERE id IN (SELECT id FROM TABLE(id INT = ?)) ORDER BY id FOR UPDATE";
+    // films or users deleted while a like was queued are skipped instead of failing the batch
+    static final String SQL_ADD_FILM_LIKE_IF_PRESENT =
+            "INSERT INTO likes_film (film_id, user_id) SELECT ?1, ?2 " +
+            "WHERE NOT EXISTS (SELECT 1 FROM likes_film WHERE film_id = ?1 AND user_id = ?2) " +
+            "AND EXISTS (SELECT 1 FROM films WHERE id = ?1) AND EXISTS (SELECT 1 FROM users WHERE id = ?2)";
+    static final String SQL_ADD_TO_LIKE_COUNT =
+            "UPDATE films SET like_count = like_count + ? WHERE id = ?";
 
     private static final String SQL_REMOVE_FILM_BY_ID =
             "DELETE FROM films WHERE id = ?";
 
-    private static final String SQL_FIND_ALL_LIKED_FILMS = "SELECT film_id FROM likes_film WHERE user_id = ?";
+    static final String SQL_FIND_ALL_LIKED_FILMS = "SELECT film_id FROM likes_film WHERE user_id = ?";
+    // both sides are read from likes_film_user_id_film_id_idx
+    static final String SQL_FIND_COMMON_FILMS = "SELECT f.id FROM likes_film AS l " +
+            "JOIN likes_film AS o ON o.user_id = ?2 AND o.film_id = l.film_id " +
+            "JOIN films AS f ON f.id = l.film_id " +
+            "WHERE l.user_id = ?1 ORDER BY f.like_count DESC, f.id";
+    static final String SQL_FIND_FILMS_BY_DIRECTOR =
+            "SELECT " +
+            "   F.ID, " +
+            "   COUNT(DISTINCT LF.USER_ID) likes " +
+            "FROM FILMS_DIRECTORS FD " +
+            "    INNER JOIN FILMS F on F.ID = FD.FILM_ID " +
+            "    LEFT JOIN LIKES_FILM LF on F.ID = LF.FILM_ID " +
+            "WHERE DIRECTOR_ID = ? " +
+            "GROUP BY F.ID ";
 
 
     @Override
@@ -77,15 +108,18 @@ public class FilmDbStorage implements FilmStorage {
         }, keyHolder);
         int id = keyHolder.getKey().intValue();
         film.setId(id);
-        film.setMpa(getMpaById(film.getMpa().getId())); //in Java object
+        film.setMpa(referenceData.getMpaById(film.getMpa().getId())); //in Java object
         updateMpaForFilmInDb(film.getId(), film.getMpa().getId()); //in DB
 
         var newGenresList = film.getGenres().stream().distinct()
-                .map(g -> getGenreById(g.getId())).collect(Collectors.toList());
+                .map(g -> referenceData.getGenreById(g.getId())).collect(Collectors.toList());
         film.setGenres(new ArrayList<>(newGenresList)); //in Java object
         updateGenresForFilmInDb(film.getId(), newGenresList.stream().distinct().map(genre -> //in DB
                 genre.getId()).collect(Collectors.toList()));
         updateDirectorsForFilmInDb(film);
+        filmCache.invalidate(film.getId());
+        popularityIndex.putFilm(film.getId(), film.getReleaseDate(), genreIds(film));
+        searchIndex.putFilm(film.getId(), film.getName(), directorIds(film));
         log.debug("correct adding film {}", film);
 
         return film;
@@ -93,26 +127,35 @@ public class FilmDbStorage implements FilmStorage {
 
     @Override
     public List<Film> getAllFilms() {
-        ArrayList<Film> allFilms = new ArrayList<>();
-        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_FILMS);
-        while (filmRows.next()) {
-            allFilms.add(getFilmFromRow(filmRows));
-        }
+        return filmHydrator.loadAll();
+    }
 
-        fillDirectorsFromDb(allFilms);
+    @Override
+    public CursorPage<Film> getFilmsPage(int afterId, int limit) {
+        List<Integer> filmsId = jdbcTemplate.queryForList(SQL_FIND_FILMS_PAGE, Integer.class, afterId, limit + 1);
+        Integer nextCursor = null;
+        if (filmsId.size() > limit) {
+            filmsId = filmsId.subList(0, limit);
+            nextCursor = filmsId.get(limit - 1);
+        }
+        return new CursorPage<>(filmHydrator.load(filmsId), nextCursor);
+    }
 
-        return allFilms;
+    @Override
+    public void streamAllFilms(FilmConsumer consumer) throws IOException {
+        filmExporter.export(consumer);
     }
 
     @Override
     public Optional<Film> getFilmById(int filmId) {
-        SqlRowSet filmRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_FILMS + " where id = ?", filmId);
-        if (filmRows.next()) {
-            Film film = getFilmFromRow(filmRows);
-            return Optional.of(film);
-        } else {
-            return Optional.empty();
+        Optional<Film> cached = filmCache.get(filmId);
+        if (cached.isPresent()) {
+            return cached;
         }
+        long cacheVersion = filmCache.version();
+        Optional<Film> film = filmHydrator.load(filmId);
+        film.ifPresent(f -> filmCache.put(f, cacheVersion));
+        return film;
     }
 
     @Override
@@ -120,15 +163,18 @@ public class FilmDbStorage implements FilmStorage {
         if (getFilmById(film.getId()).isPresent()) {
             jdbcTemplate.update(SQL_UPDATE_FILM, film.getId(), film.getName(),
                     film.getDescription(), Date.valueOf(film.getReleaseDate()), film.getDuration());
-            film.setMpa(getMpaById(film.getMpa().getId())); //in Java object
+            film.setMpa(referenceData.getMpaById(film.getMpa().getId())); //in Java object
             updateMpaForFilmInDb(film.getId(), film.getMpa().getId()); //in DB
 
             var newGenresList = film.getGenres().stream().distinct()
-                    .map(g -> getGenreById(g.getId())).collect(Collectors.toList());
+                    .map(g -> referenceData.getGenreById(g.getId())).collect(Collectors.toList());
             film.setGenres(new ArrayList<>(newGenresList)); //in Java object
             updateGenresForFilmInDb(film.getId(), newGenresList.stream().distinct().map(genre ->
                     genre.getId()).collect(Collectors.toList()));
             updateDirectorsForFilmInDb(film);
+            filmCache.invalidate(film.getId());
+            popularityIndex.putFilm(film.getId(), film.getReleaseDate(), genreIds(film));
+            searchIndex.putFilm(film.getId(), film.getName(), directorIds(film));
             log.debug("correct update film {}", film);
         } else {
             log.debug("incorrect update film {}", film);
@@ -137,134 +183,132 @@ public class FilmDbStorage implements FilmStorage {
         return film;
     }
 
+    /**
+     * Adds the like once and bumps films.like_count in the same transaction.
+     * The film row is locked first, so concurrent likes of one film are serialised.
+     */
     @Override
-    public List<Genre> getAllGenres() {
-        List<Genre> allGenres = new ArrayList<>();
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_GENRES);
-        while (userRows.next()) {
-            Genre genre = new Genre(userRows.getString("genre_name"), userRows.getInt("genre_id"));
-            allGenres.add(genre);
+    @Transactional
+    public void addLike(int filmId, int userId) {
+        jdbcTemplate.queryForList(SQL_LOCK_FILM, Integer.class, filmId);
+        if (jdbcTemplate.update(SQL_ADD_FILM_LIKE, filmId, userId) > 0) {
+            jdbcTemplate.update(SQL_ADD_TO_LIKE_COUNT, 1, filmId);
+            popularityIndex.addLikes(filmId, 1);
+            recommendationEngine.addLike(userId, filmId);
         }
-        return allGenres;
+        filmCache.invalidate(filmId);
     }
 
     @Override
-    public Genre getGenreById(int genreId) {
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_GENRES + " where genre_id=?", genreId);
-        if (userRows.next()) {
-            return new Genre(userRows.getString("genre_name"), userRows.getInt("genre_id"));
-        } else {
-            throw new NotFoundException("incorrect genre id!");
+    @Transactional
+    public void removeLike(int filmId, int userId) {
+        jdbcTemplate.queryForList(SQL_LOCK_FILM, Integer.class, filmId);
+        int removed = jdbcTemplate.update(SQL_REMOVE_FILM_LIKE, filmId, userId);
+        if (removed > 0) {
+            jdbcTemplate.update(SQL_ADD_TO_LIKE_COUNT, -removed, filmId);
+            popularityIndex.addLikes(filmId, -removed);
+            recommendationEngine.removeLike(userId, filmId);
         }
+        filmCache.invalidate(filmId);
     }
 
+    /**
+     * Applies queued likes and unlikes with one JDBC batch each and adjusts like_count,
+     * all in one transaction. The films involved are locked in id order first.
+     */
     @Override
-    public List<Mpa> getAllMpa() {
-        List<Mpa> allMpa = new ArrayList<>();
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_MPA);
-        while (userRows.next()) {
-            Mpa mpa = new Mpa(userRows.getString("mpa_name"), userRows.getInt("id"));
-            allMpa.add(mpa);
+    @Transactional
+    public void applyLikes(Collection<LikeChange> changes) {
+        List<LikeChange> likes = changes.stream().filter(LikeChange::isLike).collect(Collectors.toList());
+        List<LikeChange> unlikes = changes.stream().filter(c -> !c.isLike()).collect(Collectors.toList());
+        Integer[] filmIds = changes.stream().map(LikeChange::getFilmId).distinct().sorted().toArray(Integer[]::new);
+        jdbcTemplate.queryForList(SQL_LOCK_FILMS, Integer.class, (Object) filmIds);
+
+        Map<Integer, Integer> deltas = new HashMap<>();
+        int[] added = jdbcTemplate.batchUpdate(SQL_ADD_FILM_LIKE_IF_PRESENT, toArgs(likes));
+        for (int i = 0; i < added.length; i++) {
+            deltas.merge(likes.get(i).getFilmId(), added[i], Integer::sum);
+            if (added[i] > 0) {
+                recommendationEngine.addLike(likes.get(i).getUserId(), likes.get(i).getFilmId());
+            }
         }
-        return allMpa;
-    }
-
-    @Override
-    public Mpa getMpaById(Integer mpaId) {
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_MPA + " where id=?", mpaId);
-        if (userRows.next()) {
-            return new Mpa(userRows.getString("mpa_name"), userRows.getInt("id"));
-        } else {
-            throw new NotFoundException("incorrect MPA id!");
+        int[] removed = jdbcTemplate.batchUpdate(SQL_REMOVE_FILM_LIKE, toArgs(unlikes));
+        for (int i = 0; i < removed.length; i++) {
+            deltas.merge(unlikes.get(i).getFilmId(), -removed[i], Integer::sum);
+            if (removed[i] > 0) {
+                recommendationEngine.removeLike(unlikes.get(i).getUserId(), unlikes.get(i).getFilmId());
+            }
         }
+        deltas.values().removeIf(delta -> delta == 0);
+        jdbcTemplate.batchUpdate(SQL_ADD_TO_LIKE_COUNT, deltas.entrySet().stream()
+                .map(e -> new Object[]{e.getValue(), e.getKey()}).collect(Collectors.toList()));
+        // dropped changes too: the film may have been cached while they were queued
+        for (int filmId : filmIds) {
+            filmCache.invalidate(filmId);
+        }
+        deltas.forEach(popularityIndex::addLikes);
+        log.debug("applied {} likes and {} unlikes to {} films", likes.size(), unlikes.size(), deltas.size());
     }
 
-    @Override
-    public void addLike(int filmId, int userId) {
-        removeLike(filmId, userId);
-        jdbcTemplate.update(SQL_ADD_FILM_LIKE, filmId, userId);
-    }
-
-    @Override
-    public void removeLike(int filmId, int userId) {
-        jdbcTemplate.update(SQL_REMOVE_FILM_LIKE, filmId, userId);
+    private static List<Object[]> toArgs(List<LikeChange> changes) {
+        return changes.stream().map(c -> new Object[]{c.getFilmId(), c.getUserId()}).collect(Collectors.toList());
     }
 
+    /**
+     * Most liked films first, ties by id; films without likes are included.
+     */
     @Override
     public List<Film> topNFilms(int count) {
-        List<Film> topFilms = new ArrayList<>();
-        SqlRowSet likesRows = jdbcTemplate.queryForRowSet("SELECT FILM_ID  FROM LIKES_FILM lf GROUP BY FILM_ID " +
-                "ORDER BY COUNT( USER_ID) DESC LIMIT ?", count);
-        while (likesRows.next()) {
-            Optional<Film> filmOptional = getFilmById(likesRows.getInt("film_id"));
-            if (filmOptional.isPresent()) {
-                topFilms.add(filmOptional.get());
-            }
-        }
-
-        fillDirectorsFromDb(topFilms);
-
-        return topFilms;
+        return loadCached(popularityIndex.top(count, null, null));
     }
 
+    /**
+     * Answered from the {@link SearchIndex}; each film appears once, most liked first.
+     */
     @Override
     public List<Film> searchFilmsByString(String query, String searchBy) {
 
         log.info("SearchFilms " + searchBy);
 
-        String lquery = query.toLowerCase();
-        List<Film> foundFilms = new ArrayList<>();
+        List<Integer> foundFilmsId;
         switch (searchBy) {
             case "title":
-                addFoundFilms(searchFilmsByTitle(lquery), foundFilms);
+                foundFilmsId = searchIndex.search(query, true, false);
                 break;
             case "director":
-                addFoundFilms(searchFilmsByDirector(lquery), foundFilms);
+                foundFilmsId = searchIndex.search(query, false, true);
                 break;
             case "both":
-                addFoundFilms(searchFilmsByDirector(lquery), foundFilms);
-                addFoundFilms(searchFilmsByTitle(lquery), foundFilms);
+                foundFilmsId = searchIndex.search(query, true, true);
                 break;
             default:
                 throw new RuntimeException("Invalid argument searchBy: " + searchBy);
         }
 
-        return foundFilms;
+        return loadCached(foundFilmsId);
     }
 
-    private void addFoundFilms(SqlRowSet filmRows, List<Film> films) {
-        while (filmRows.next()) {
-            Film film = getFilmFromRow(filmRows);
-            Director director = getDirectorForFilmId(film.getId());
-            if (director != null) film.getDirectors().add(director);
-            films.add(film);
+    @Override
+    public List<Suggestion> suggest(String prefix, int limit, String searchBy) {
+        switch (searchBy) {
+            case "title":
+                return searchIndex.suggest(prefix, limit, true, false);
+            case "director":
+                return searchIndex.suggest(prefix, limit, false, true);
+            case "both":
+                return searchIndex.suggest(prefix, limit, true, true);
+            default:
+                throw new RuntimeException("Invalid argument searchBy: " + searchBy);
         }
     }
 
-    private SqlRowSet searchFilmsByTitle(String query) {
-        String sqlSearchByTitle = "SELECT f.* " +
-                "FROM (SELECT * FROM films AS fs WHERE LOWER(fs.name) LIKE ?) AS f " +
-                "LEFT OUTER JOIN likes_film AS lf ON f.id = lf.film_id " +
-                "GROUP BY f.id ORDER BY COUNT(lf.user_id) DESC";
-
-        return jdbcTemplate.queryForRowSet(sqlSearchByTitle, "%" + query + "%");
-    }
-
-    private SqlRowSet searchFilmsByDirector(String query) {
-        String sqlSearchByDirector = "SELECT f.* " +
-                "FROM (SELECT * FROM directors AS ds WHERE LOWER(ds.name) LIKE ?) AS d " +
-                "INNER JOIN films_directors AS df ON d.id = df.director_id " +
-                "INNER JOIN films AS f ON df.film_id = f.id " +
-                "LEFT OUTER JOIN likes_film AS lf ON f.id = lf.film_id " +
-                "GROUP BY f.id ORDER BY COUNT(lf.user_id) DESC";
-
-        return jdbcTemplate.queryForRowSet(sqlSearchByDirector, "%" + query + "%");
-    }
-
-
-
     public void deleteFilm(int id) {
         jdbcTemplate.update(SQL_REMOVE_FILM_BY_ID, id);
+        filmCache.invalidate(id);
+        topReviewsCache.invalidate(id); //reviews of the film are removed by cascade
+        popularityIndex.removeFilm(id);
+        searchIndex.removeFilm(id);
+        recommendationEngine.removeFilm(id);
     }
     @Override
     public List<Film> getAllFilmsUserLiked(int userId) {
@@ -277,6 +321,11 @@ public class FilmDbStorage implements FilmStorage {
         return getListFilmsByListId(allFilmsId);
     }
 
+    @Override
+    public List<Film> getCommonFilms(int userId, int friendId) {
+        return loadCached(jdbcTemplate.queryForList(SQL_FIND_COMMON_FILMS, Integer.class, userId, friendId));
+    }
+
     @Override
     public List<Film> getFilmByDirector(int directorId, String sortBy) {
 
@@ -284,18 +333,7 @@ public class FilmDbStorage implements FilmStorage {
             sortBy = "";
         }
 
-        String sql =    "SELECT " +
-                        "   F.ID, " +
-                        "   F.NAME, " +
-                        "   F.DESCRIPTION, " +
-                        "   F.DURATION, " +
-                        "   F.RELEASE_DATE, " +
-                        "   COUNT(DISTINCT LF.USER_ID) likes " +
-                        "FROM FILMS_DIRECTORS FD " +
-                        "    INNER JOIN FILMS F on F.ID = FD.FILM_ID " +
-                        "    LEFT JOIN LIKES_FILM LF on F.ID = LF.FILM_ID " +
-                        "WHERE DIRECTOR_ID = ? " +
-                        "GROUP BY F.ID ";
+        String sql = SQL_FIND_FILMS_BY_DIRECTOR;
 
         switch (sortBy){
             case "likes":
@@ -306,196 +344,67 @@ public class FilmDbStorage implements FilmStorage {
                 break;
         }
 
-        List<Film> films = new ArrayList<>();
-        SqlRowSet rowSet = jdbcTemplate.queryForRowSet(sql,
-                directorId);
-        while (rowSet.next()) {
-            films.add(getFilmFromRow(rowSet));
-        }
-        if (films.size() == 0){
+        List<Integer> filmsId = new ArrayList<>();
+        jdbcTemplate.query(sql, rs -> {
+            filmsId.add(rs.getInt("id"));
+        }, directorId);
+        if (filmsId.size() == 0){
             log.debug("Director id={} not found", directorId);
             throw new NotFoundException("Director id=" + directorId + " not found");
         }
-        fillDirectorsFromDb(films);
 
-        return films;
+        return filmHydrator.load(filmsId);
     }
 
+    /**
+     * Returns films in the order of the requested ids; see {@link FilmHydrator#load(List)}.
+     */
+    @Override
     public List<Film> getListFilmsByListId(List<Integer> ids) {
-        List<Film> allFilms = new ArrayList<>();
-        String stringListFilmsId = "(" + ids.toString().substring(1, ids.toString().length() - 1).replace(" ", "") + ")";
-        SqlRowSet likeRows = jdbcTemplate.queryForRowSet("SELECT * FROM likes_film WHERE film_id IN " + stringListFilmsId);
-        SqlRowSet genreRows = jdbcTemplate.queryForRowSet("SELECT * FROM films_genres WHERE film_id IN " + stringListFilmsId);
-        SqlRowSet mpaRows = jdbcTemplate.queryForRowSet("SELECT * FROM films_mpa WHERE film_id IN " + stringListFilmsId);
-        SqlRowSet filmRows = jdbcTemplate.queryForRowSet("SELECT * FROM films WHERE id IN " + stringListFilmsId);
-        SqlRowSet genres = jdbcTemplate.queryForRowSet("SELECT * FROM genres");
-        SqlRowSet mpa = jdbcTemplate.queryForRowSet("SELECT * FROM mpa");
-
-        //создадим все жанры
-        List<Genre> allGenres = new ArrayList<>();
-        while (genres.next()) {
-            allGenres.add(new Genre(genres.getString("genre_name"), genres.getInt("genre_id")));
-        }
-
-        //создадим все mpa
-        var allMpa = new HashMap<Integer, Mpa>();
-        while (mpa.next()) {
-            allMpa.put(mpa.getInt("id"), new Mpa(mpa.getString("mpa_name"), mpa.getInt("id")));
-        }
-
-        for (int filmId : ids) {
-            filmRows.next();
-            Film film = new Film(filmRows.getString("name"), filmRows.getString("description")
-                    , filmRows.getDate("release_date").toLocalDate(), filmRows.getInt("duration"));
-            film.setId(filmId);
-            //установим лайки
-            HashSet<Integer> likesSet = new HashSet<>();
-            while (likeRows.next()) {
-                if (("" + filmId).equals(likeRows.getString("film_id"))) {
-                    likesSet.add(likeRows.getInt("user_id"));
-                }
-            }
-            likeRows.beforeFirst();
-            film.setLikes(likesSet);
-
-            //установим жанры
-            List<Integer> genresListId = new ArrayList<>();
-            while (genreRows.next()) {
-                if (("" + filmId).equals(genreRows.getString("film_id"))) {
-                    genresListId.add(genreRows.getInt("genre_id"));
-                }
-            }
-            genreRows.beforeFirst();
-
-            List<Genre> genresList = allGenres.stream().filter(x -> genresListId.contains(x.getId())).collect(Collectors.toList());
-            film.setGenres((ArrayList<Genre>) genresList);
-
-            //установим MPA
-            while (mpaRows.next()) {
-                if (("" + filmId).equals(mpaRows.getString("film_id"))) {
-                    film.setMpa(allMpa.get(mpaRows.getInt("mpa_id")));
-                }
-            }
-            mpaRows.beforeFirst();
-            allFilms.add(film);
-        }
-
-        fillDirectorsFromDb(allFilms);
-
-        return allFilms;
-
+        return filmHydrator.load(ids);
     }
 
     @Override
     public List<Film> getPopularFilms(int count, int genreId, String year) {
-        List<Integer> allFilmsId = new ArrayList<>();
-        String sql =
-                "SELECT f.id " +
-                        "FROM films AS f " +
-                        "JOIN films_genres AS fg ON f.id = fg.film_id " +
-                        "JOIN genres AS g ON g.genre_id = fg.genre_id " +
-                        "LEFT JOIN (SELECT film_id, COUNT(user_id) rating " +
-                        "      FROM likes_film " +
-                        "      GROUP BY film_id) AS r ON f.id =  r.film_id " +
-                        "WHERE YEAR(f.release_date) = ? AND g.genre_id = ?" +
-                        "ORDER BY r.rating DESC " +
-                        "LIMIT ?;";
-        SqlRowSet filmIdRows = jdbcTemplate.queryForRowSet(sql, year, genreId, count);
-        while (filmIdRows.next()) {
-            allFilmsId.add(filmIdRows.getInt("id"));
-        }
-        return getListFilmsByListId(allFilmsId);
+        return loadCached(popularityIndex.top(count, genreId, Integer.valueOf(year)));
     }
 
-
     @Override
     public List<Film> getPopularFilms(int count, int genreId) {
-        List<Integer> allFilmsId = new ArrayList<>();
-        String sql =
-                "SELECT f.id " +
-                        "FROM films AS f " +
-                        "JOIN films_genres AS fg ON f.id = fg.film_id " +
-                        "LEFT JOIN (SELECT film_id, COUNT(user_id) rating " +
-                        "      FROM likes_film " +
-                        "      GROUP BY film_id) AS r ON f.id =  r.film_id " +
-                        "WHERE fg.genre_id = ?" +
-                        "ORDER BY r.rating DESC " +
-                        "LIMIT ?;";
-        SqlRowSet filmIdRows = jdbcTemplate.queryForRowSet(sql, genreId, count);
-        while (filmIdRows.next()) {
-            allFilmsId.add(filmIdRows.getInt("id"));
-        }
-        return getListFilmsByListId(allFilmsId);
+        return loadCached(popularityIndex.top(count, genreId, null));
     }
 
     @Override
     public List<Film> getPopularFilms(int count, String year) {
-        List<Integer> allFilmsId = new ArrayList<>();
-        String sql =
-                "SELECT  f.id " +
-                        "FROM films AS f " +
-                        "LEFT JOIN (SELECT film_id, COUNT(user_id) rating " +
-                        "            FROM likes_film " +
-                        "            GROUP BY film_id) AS r ON f.id =  r.film_id " +
-                        "WHERE YEAR(f.release_date) = ? " +
-                        "ORDER BY r.rating DESC " +
-                        "LIMIT ?;";
-        SqlRowSet filmIdRows = jdbcTemplate.queryForRowSet(sql, year, count);
-        while (filmIdRows.next()) {
-            allFilmsId.add(filmIdRows.getInt("id"));
-        }
-        return getListFilmsByListId(allFilmsId);
+        return loadCached(popularityIndex.top(count, null, Integer.valueOf(year)));
     }
 
-
-    private Set<Integer> getSetLikesForFilmFromDb(int filmId) {
-        Set<Integer> likes = new HashSet<>();
-        SqlRowSet likesRows = jdbcTemplate.queryForRowSet("SELECT user_id FROM likes_film WHERE film_id = ?", filmId);
-        while (likesRows.next()) {
-            likes.add(likesRows.getInt("user_id"));
+    /**
+     * Like {@link #getListFilmsByListId(List)}, but films found in the film cache are taken from it
+     * and only the misses are hydrated, in one batch.
+     */
+    private List<Film> loadCached(List<Integer> ids) {
+        Map<Integer, Film> found = new HashMap<>();
+        List<Integer> missing = new ArrayList<>();
+        for (Integer id : ids) {
+            filmCache.get(id).ifPresentOrElse(film -> found.put(id, film), () -> missing.add(id));
         }
-        return likes;
-    }
-
-    private Film getFilmFromRow(SqlRowSet filmRows) {
-        Film film = new Film(filmRows.getString("name"), filmRows.getString("description")
-                , filmRows.getDate("release_date").toLocalDate(), filmRows.getInt("duration"));
-        film.setId(filmRows.getInt("id"));
-        film.setGenres(getGenresForFilmId(film.getId()));
-        film.setMpa(getMpaForFilmId(film.getId()));
-        film.setLikes(getSetLikesForFilmFromDb(film.getId()));
-        return film;
-    }
-
-    private ArrayList<Genre> getGenresForFilmId(int filmId) {
-        var allGenresForFilmList = new ArrayList<Genre>();
-        SqlRowSet genresIntRow = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_GENRES_BY_FILM_ID, filmId);
-        while (genresIntRow.next()) {
-            Genre genre = getGenreById(genresIntRow.getInt("genre_id"));
-            allGenresForFilmList.add(genre);
+        if (!missing.isEmpty()) {
+            long cacheVersion = filmCache.version();
+            for (Film film : filmHydrator.load(missing)) {
+                found.put(film.getId(), film);
+                filmCache.put(film, cacheVersion);
+            }
         }
-        return allGenresForFilmList;
+        return ids.stream().map(found::get).filter(Objects::nonNull).collect(Collectors.toList());
     }
 
-    private Mpa getMpaForFilmId(int filmId) {
-
-        SqlRowSet mpaIntRow = jdbcTemplate.queryForRowSet(SQL_FIND_MPA_BY_FILM_ID, filmId);
-        mpaIntRow.next();
-        return getMpaById(mpaIntRow.getInt("mpa_id"));
+    private static List<Integer> genreIds(Film film) {
+        return film.getGenres().stream().map(Genre::getId).collect(Collectors.toList());
     }
 
-
-    private Director getDirectorForFilmId(int filmId) {
-        String sqlGetDirector = "SELECT d.* FROM directors AS d " +
-                "INNER JOIN films_directors AS fd ON d.id = fd.director_id " +
-                "INNER JOIN (SELECT * FROM films AS fs WHERE fs.id = ?) AS f ON fd.film_id = f.id";
-
-        SqlRowSet dirRow = jdbcTemplate.queryForRowSet(sqlGetDirector, filmId);
-        if (dirRow.next()) {
-            return new Director(dirRow.getInt("id"), dirRow.getString("name"));
-        } else {
-            return null;
-        }
+    private static List<Integer> directorIds(Film film) {
+        return film.getDirectors().stream().map(Director::getId).collect(Collectors.toList());
     }
 
     private void updateGenresForFilmInDb(int filmId, List<Integer> genresId) {
@@ -543,43 +452,4 @@ public class FilmDbStorage implements FilmStorage {
 
         log.debug("Updated directors for film id={}", film.getId());
     }
-
-    private void fillDirectorsFromDb(List<Film> films) {
-
-        if (films.size() == 0){
-            return;
-        }
-
-        List<Integer> ids = films.stream().map(Film::getId).collect(Collectors.toList());
-        String inSql = String.join(",", Collections.nCopies(ids.size(), "?"));
-
-        String sql =    String.format(  "SELECT " +
-                                        "   FD.FILM_ID, " +
-                                        "   D.ID, " +
-                                        "   D.NAME " +
-                                        "FROM FILMS_DIRECTORS FD " +
-                                        "   INNER JOIN DIRECTORS D " +
-                                        "       ON FD.DIRECTOR_ID = D.ID " +
-                                        "WHERE FILM_ID IN (%s) " +
-                                        "ORDER BY FD.FILM_ID", inSql);
-
-        Map<Integer, Film> filmMap = films.stream()
-                .collect(Collectors.toMap(Film::getId, Function.identity()));
-
-        jdbcTemplate.query(
-                sql, rs -> {
-                    Film film = filmMap.get(rs.getInt("film_id"));
-                    film.getDirectors().clear();
-
-                    Director director = new Director();
-                    director.setId(rs.getInt("id"));
-                    director.setName(rs.getString("name"));
-
-                    film.getDirectors().add(director);
-                }
-                , ids.toArray());
-
-        log.debug("Completed directors for films");
-    }
 }
-
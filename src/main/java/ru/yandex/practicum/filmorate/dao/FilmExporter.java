@@ -0,0 +1,137 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.storage.film.FilmConsumer;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Streams the whole catalog without holding it in memory.
+ * Films, genres, directors and likes are read through four forward-only cursors,
+ * each ordered by film id, and merge-joined, so at most one film is alive at a time.
+ */
+@Component
+@Slf4j
+public class FilmExporter {
+
+    private static final String SQL_SELECT_FILMS =
+            "SELECT f.id, f.name, f.description, f.release_date, f.duration, fm.mpa_id " +
+            "FROM films AS f LEFT JOIN films_mpa AS fm ON f.id = fm.film_id ORDER BY f.id";
+    private static final String SQL_SELECT_GENRES =
+            "SELECT film_id, genre_id FROM films_genres ORDER BY film_id, id";
+    private static final String SQL_SELECT_DIRECTORS =
+            "SELECT fd.film_id, d.id, d.name FROM films_directors AS fd " +
+            "INNER JOIN directors AS d ON fd.director_id = d.id ORDER BY fd.film_id";
+    private static final String SQL_SELECT_LIKES =
+            "SELECT film_id, user_id FROM likes_film ORDER BY film_id";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final FilmHydrator filmHydrator;
+    private final ReferenceDataRegistry referenceData;
+    private final int fetchSize;
+
+    public FilmExporter(JdbcTemplate jdbcTemplate, FilmHydrator filmHydrator, ReferenceDataRegistry referenceData,
+                        @Value("${filmorate.export.fetch-size:1000}") int fetchSize) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.filmHydrator = filmHydrator;
+        this.referenceData = referenceData;
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Passes every film, fully populated and in id order, to the consumer.
+     * An exception from the consumer (e.g. the client went away) aborts the export.
+     */
+    public void export(FilmConsumer consumer) throws IOException {
+        try {
+            int exported = jdbcTemplate.execute((Connection connection) -> {
+                try (PreparedStatement films = open(connection, SQL_SELECT_FILMS);
+                     PreparedStatement genres = open(connection, SQL_SELECT_GENRES);
+                     PreparedStatement directors = open(connection, SQL_SELECT_DIRECTORS);
+                     PreparedStatement likes = open(connection, SQL_SELECT_LIKES);
+                     ResultSet filmRows = films.executeQuery();
+                     ResultSet genreRows = genres.executeQuery();
+                     ResultSet directorRows = directors.executeQuery();
+                     ResultSet likeRows = likes.executeQuery()) {
+                    Cursor genreCursor = new Cursor(genreRows);
+                    Cursor directorCursor = new Cursor(directorRows);
+                    Cursor likeCursor = new Cursor(likeRows);
+                    int count = 0;
+                    while (filmRows.next()) {
+                        Film film = filmHydrator.makeFilm(filmRows);
+                        int filmId = film.getId();
+                        while (genreCursor.advanceTo(filmId)) {
+                            film.getGenres().add(referenceData.getGenreById(genreRows.getInt("genre_id")));
+                        }
+                        while (directorCursor.advanceTo(filmId)) {
+                            film.getDirectors().add(new Director(directorRows.getInt("id"), directorRows.getString("name")));
+                        }
+                        while (likeCursor.advanceTo(filmId)) {
+                            film.addLike(likeRows.getInt("user_id"));
+                        }
+                        try {
+                            consumer.accept(film);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        count++;
+                    }
+                    return count;
+                }
+            });
+            log.debug("exported {} films", exported);
+        } catch (UncheckedIOException e) {
+            log.debug("film export aborted: {}", e.getCause().getMessage());
+            throw e.getCause();
+        }
+    }
+
+    private PreparedStatement open(Connection connection, String sql) throws SQLException {
+        PreparedStatement statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY,
+                ResultSet.CONCUR_READ_ONLY);
+        statement.setFetchSize(fetchSize);
+        return statement;
+    }
+
+    /**
+     * A child cursor ordered by film_id. Rows of films that no longer exist are skipped.
+     */
+    private static class Cursor {
+        private final ResultSet rs;
+        private boolean onRow;
+        private boolean consumed = true;
+
+        private Cursor(ResultSet rs) {
+            this.rs = rs;
+        }
+
+        /**
+         * Moves to the next row of the given film; false once the cursor is past it.
+         */
+        private boolean advanceTo(int filmId) throws SQLException {
+            while (true) {
+                if (consumed) {
+                    onRow = rs.next();
+                    consumed = false;
+                }
+                if (!onRow || rs.getInt("film_id") > filmId) {
+                    return false;
+                }
+                consumed = true;
+                if (rs.getInt("film_id") == filmId) {
+                    return true;
+                }
+            }
+        }
+    }
+}
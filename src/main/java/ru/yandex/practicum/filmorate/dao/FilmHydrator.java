@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.*;
+
+/**
+ * Assembles fully populated {@link Film} objects (MPA, genres, directors and likes)
+ * for any set of film ids with a fixed number of set-based queries, grouped
+ * into the result in a single pass over each result set:
+ * one for films with their MPA id, then one each for genres, directors and likes.
+ * Genre and MPA instances come from {@link ReferenceDataRegistry}.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class FilmHydrator {
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReferenceDataRegistry referenceData;
+
+    private static final String SQL_SELECT_FILMS =
+            "SELECT f.id, f.name, f.description, f.release_date, f.duration, fm.mpa_id " +
+            "FROM %s films AS f%s " +
+            "LEFT JOIN films_mpa AS fm ON f.id = fm.film_id";
+    private static final String SQL_SELECT_GENRES =
+            "SELECT fg.film_id, fg.genre_id FROM %s films_genres AS fg%s";
+    private static final String SQL_SELECT_DIRECTORS =
+            "SELECT fd.film_id, d.id, d.name " +
+            "FROM %s films_directors AS fd%s " +
+            "INNER JOIN directors AS d ON fd.director_id = d.id";
+    private static final String SQL_SELECT_LIKES =
+            "SELECT lf.film_id, lf.user_id FROM %s likes_film AS lf%s";
+
+    // The id array is joined as a table so that each id becomes one index lookup.
+    // "film_id = ANY(?)" re-scans the whole array for every row and grows quadratically.
+    private static final String SQL_IDS_TABLE = "TABLE(id INT = ?) AS ids INNER JOIN";
+    private static final String SQL_ON_IDS = " ON %s = ids.id";
+
+    static final String SQL_SELECT_FILMS_BY_IDS = byIds(SQL_SELECT_FILMS, "f.id");
+    static final String SQL_SELECT_GENRES_BY_IDS = byIds(SQL_SELECT_GENRES, "fg.film_id") + " ORDER BY fg.id";
+    static final String SQL_SELECT_DIRECTORS_BY_IDS = byIds(SQL_SELECT_DIRECTORS, "fd.film_id");
+    static final String SQL_SELECT_LIKES_BY_IDS = byIds(SQL_SELECT_LIKES, "lf.film_id");
+
+    public List<Film> loadAll() {
+        Map<Integer, Film> films = loadFilms(allFilms(SQL_SELECT_FILMS) + " ORDER BY f.id");
+        if (!films.isEmpty()) {
+            fillGenres(films, allFilms(SQL_SELECT_GENRES) + " ORDER BY fg.id");
+            fillDirectors(films, allFilms(SQL_SELECT_DIRECTORS));
+            fillLikes(films, allFilms(SQL_SELECT_LIKES));
+        }
+        log.debug("hydrated all {} films", films.size());
+        return new ArrayList<>(films.values());
+    }
+
+    public Optional<Film> load(int filmId) {
+        return load(List.of(filmId)).stream().findFirst();
+    }
+
+    /**
+     * Returns films in the order of the requested ids. Unknown ids are skipped.
+     */
+    public List<Film> load(List<Integer> ids) {
+        if (ids.isEmpty()) {
+            return new ArrayList<>();
+        }
+        Integer[] idArray = ids.stream().distinct().toArray(Integer[]::new);
+
+        Map<Integer, Film> films = loadFilms(SQL_SELECT_FILMS_BY_IDS, (Object) idArray);
+        if (!films.isEmpty()) {
+            fillGenres(films, SQL_SELECT_GENRES_BY_IDS, (Object) idArray);
+            fillDirectors(films, SQL_SELECT_DIRECTORS_BY_IDS, (Object) idArray);
+            fillLikes(films, SQL_SELECT_LIKES_BY_IDS, (Object) idArray);
+        }
+
+        List<Film> result = new ArrayList<>(ids.size());
+        for (Integer id : ids) {
+            Film film = films.get(id);
+            if (film != null) {
+                result.add(film);
+            }
+        }
+        log.debug("hydrated {} films for {} ids", films.size(), ids.size());
+        return result;
+    }
+
+    private static String allFilms(String sql) {
+        return String.format(sql, "", "");
+    }
+
+    private static String byIds(String sql, String filmIdColumn) {
+        return String.format(sql, SQL_IDS_TABLE, String.format(SQL_ON_IDS, filmIdColumn));
+    }
+
+    private Map<Integer, Film> loadFilms(String sql, Object... args) {
+        Map<Integer, Film> films = new LinkedHashMap<>();
+        jdbcTemplate.query(sql, rs -> {
+            Film film = makeFilm(rs);
+            films.put(film.getId(), film);
+        }, args);
+        return films;
+    }
+
+    private void fillGenres(Map<Integer, Film> films, String sql, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            Film film = films.get(rs.getInt("film_id"));
+            if (film != null) {
+                film.getGenres().add(referenceData.getGenreById(rs.getInt("genre_id")));
+            }
+        }, args);
+    }
+
+    private void fillDirectors(Map<Integer, Film> films, String sql, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            Film film = films.get(rs.getInt("film_id"));
+            if (film != null) {
+                film.getDirectors().add(new Director(rs.getInt("id"), rs.getString("name")));
+            }
+        }, args);
+    }
+
+    private void fillLikes(Map<Integer, Film> films, String sql, Object... args) {
+        jdbcTemplate.query(sql, rs -> {
+            Film film = films.get(rs.getInt("film_id"));
+            if (film != null) {
+                film.addLike(rs.getInt("user_id"));
+            }
+        }, args);
+    }
+
+    Film makeFilm(ResultSet rs) throws SQLException {
+        Film film = new Film(rs.getString("name"), rs.getString("description"),
+                rs.getDate("release_date").toLocalDate(), rs.getInt("duration"));
+        film.setId(rs.getInt("id"));
+        int mpaId = rs.getInt("mpa_id");
+        if (!rs.wasNull()) {
+            film.setMpa(referenceData.getMpaById(mpaId));
+        }
+        return film;
+    }
+}
@@ -0,0 +1,428 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static ru.yandex.practicum.filmorate.dao.TransactionHooks.afterCommit;
+
+/**
+ * In-memory copy of users_friendship for the friends, common friends and friend suggestion endpoints.
+ * <p>
+ * A row (user1_id, user2_id, mutually) is an edge from user1 to their friend user2. Edges are kept
+ * in compressed sparse rows of primitive ints, once by source and once by target, so an edge costs
+ * about 8 bytes. Each entry is {@code userId << 1 | mutually}, and every row is sorted by user id,
+ * so user ids above {@link #MAX_USER_ID} are rejected.
+ * A changed row goes to a per-user buffer first; once {@code max-buffered} rows are buffered they
+ * are folded back into the compact arrays.
+ * <p>
+ * Built from the DB at startup and kept current by {@link UserDbStorage}: after a change to a pair of
+ * users commits, the pair's rows are read again and replace its edges. Reads of one pair are ordered
+ * by a lock striped over pairs, so changes to other pairs do not wait for them.
+ */
+@Component
+@Slf4j
+public class FriendshipGraph {
+
+    // the largest id whose entry stays non-negative, so that sorting agrees with decoding
+    static final int MAX_USER_ID = Integer.MAX_VALUE >>> 1;
+
+    private static final int PAIR_STRIPES = 64;
+
+    private static final String SQL_SELECT_FRIENDSHIPS = "SELECT user1_id, user2_id, mutually FROM users_friendship";
+    // one lookup per direction: H2 scans the table for the two directions joined by OR
+    static final String SQL_SELECT_PAIR =
+            "SELECT user1_id, mutually FROM users_friendship WHERE user1_id = ?1 AND user2_id = ?2 " +
+            "UNION ALL " +
+            "SELECT user1_id, mutually FROM users_friendship WHERE user1_id = ?2 AND user2_id = ?1";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // one is held from reading a pair's rows until its edges are replaced
+    private final Lock[] pairLocks = new Lock[PAIR_STRIPES];
+    private final Adjacency friends;
+    private final Adjacency followers;
+
+    public FriendshipGraph(JdbcTemplate jdbcTemplate,
+                           @Value("${filmorate.friends.max-buffered:4096}") int maxBuffered) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.friends = new Adjacency(maxBuffered);
+        this.followers = new Adjacency(maxBuffered);
+        for (int i = 0; i < PAIR_STRIPES; i++) {
+            pairLocks[i] = new ReentrantLock();
+        }
+    }
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            IntList sources = new IntList();
+            IntList targets = new IntList();
+            jdbcTemplate.query(SQL_SELECT_FRIENDSHIPS, rs -> {
+                int mutual = rs.getBoolean("mutually") ? 1 : 0;
+                sources.add(checkUserId(rs.getInt("user1_id")) << 1 | mutual);
+                targets.add(checkUserId(rs.getInt("user2_id")) << 1 | mutual);
+            });
+            friends.build(sources, targets);
+            followers.build(targets, sources);
+            log.debug("friendship graph built: {} edges", sources.size);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the user's friends, ascending.
+     */
+    public int[] friends(int userId) {
+        lock.readLock().lock();
+        try {
+            return ids(friends.get(userId));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * The user's friends with the mutual flag, as {@link ru.yandex.practicum.filmorate.model.User} keeps them.
+     */
+    public HashMap<Integer, Boolean> friendMap(int userId) {
+        lock.readLock().lock();
+        try {
+            int[] row = friends.get(userId);
+            HashMap<Integer, Boolean> map = new HashMap<>();
+            for (int entry : row) {
+                map.put(entry >>> 1, (entry & 1) == 1);
+            }
+            return map;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the users both users have as friends, ascending.
+     */
+    public int[] commonFriends(int userId, int otherId) {
+        lock.readLock().lock();
+        try {
+            int[] first = friends.get(userId);
+            int[] second = friends.get(otherId);
+            int[] common = new int[Math.min(first.length, second.length)];
+            int size = 0;
+            for (int i = 0, j = 0; i < first.length && j < second.length; ) {
+                int a = first[i] >>> 1;
+                int b = second[j] >>> 1;
+                if (a == b) {
+                    common[size++] = a;
+                    i++;
+                    j++;
+                } else if (a < b) {
+                    i++;
+                } else {
+                    j++;
+                }
+            }
+            return Arrays.copyOf(common, size);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Up to {@code limit} friends of the user's friends who are not the user or already their friends,
+     * most shared friends first, then by id.
+     */
+    public int[] suggestions(int userId, int limit) {
+        IntList candidates = new IntList();
+        int[] own;
+        lock.readLock().lock();
+        try {
+            own = friends.get(userId);
+            for (int entry : own) {
+                for (int next : friends.get(entry >>> 1)) {
+                    candidates.add(next >>> 1);
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // equal ids end up next to each other, and the run length is the number of shared friends
+        int[] ids = Arrays.copyOf(candidates.values, candidates.size);
+        Arrays.sort(ids);
+        long[] ranked = new long[ids.length];
+        int rankedSize = 0;
+        for (int i = 0; i < ids.length; ) {
+            int j = i;
+            while (j < ids.length && ids[j] == ids[i]) {
+                j++;
+            }
+            if (ids[i] != userId && !contains(own, ids[i])) {
+                // count descending, then id ascending, in one sortable long
+                ranked[rankedSize++] = (long) (Integer.MAX_VALUE - (j - i)) << 32 | ids[i];
+            }
+            i = j;
+        }
+        Arrays.sort(ranked, 0, rankedSize);
+        int[] result = new int[Math.min(limit, rankedSize)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = (int) ranked[i];
+        }
+        return result;
+    }
+
+    /**
+     * Reads the rows between the two users once the transaction commits and makes them their edges.
+     * A pair is read and applied by one thread at a time, so the last read of it is made after its last
+     * commit, whatever order the hooks of concurrent changes run in. Called inside the transaction,
+     * so that an id the graph cannot hold rolls the change back.
+     */
+    public void syncPair(int userId1, int userId2) {
+        checkUserId(userId1);
+        checkUserId(userId2);
+        afterCommit(() -> {
+            Lock pairLock = pairLocks[Math.floorMod(31 * Math.min(userId1, userId2) + Math.max(userId1, userId2),
+                    PAIR_STRIPES)];
+            pairLock.lock();
+            try {
+                Boolean[] rows = new Boolean[2];
+                jdbcTemplate.query(SQL_SELECT_PAIR, rs -> {
+                    rows[rs.getInt("user1_id") == userId1 ? 0 : 1] = rs.getBoolean("mutually");
+                }, userId1, userId2);
+                setEdges(userId1, userId2, rows[0], rows[1]);
+            } finally {
+                pairLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * Replaces the edges between the users: user1 -> user2 with the forward flag and user2 -> user1
+     * with the backward one, where null means no edge.
+     */
+    void setEdges(int userId1, int userId2, Boolean forward, Boolean backward) {
+        write(() -> {
+            unlink(userId1, userId2);
+            unlink(userId2, userId1);
+            if (forward != null) {
+                link(userId1, userId2, forward);
+            }
+            if (backward != null) {
+                link(userId2, userId1, backward);
+            }
+        });
+    }
+
+    public void removeUser(int userId) {
+        afterCommit(() -> {
+            // a pair read before the delete committed is applied first, not over the removal
+            for (Lock pairLock : pairLocks) {
+                pairLock.lock();
+            }
+            try {
+                write(() -> {
+                    for (int entry : friends.get(userId)) {
+                        followers.remove(entry >>> 1, userId);
+                    }
+                    for (int entry : followers.get(userId)) {
+                        friends.remove(entry >>> 1, userId);
+                    }
+                    friends.clear(userId);
+                    followers.clear(userId);
+                });
+            } finally {
+                for (Lock pairLock : pairLocks) {
+                    pairLock.unlock();
+                }
+            }
+        });
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void link(int userId1, int userId2, boolean mutually) {
+        int mutual = mutually ? 1 : 0;
+        friends.put(userId1, userId2 << 1 | mutual);
+        followers.put(userId2, userId1 << 1 | mutual);
+    }
+
+    private void unlink(int userId1, int userId2) {
+        friends.remove(userId1, userId2);
+        followers.remove(userId2, userId1);
+    }
+
+    private static int checkUserId(int userId) {
+        if (userId < 0 || userId > MAX_USER_ID) {
+            throw new IllegalStateException("User id " + userId + " does not fit the friendship graph");
+        }
+        return userId;
+    }
+
+    private static int[] ids(int[] row) {
+        int[] ids = new int[row.length];
+        for (int i = 0; i < row.length; i++) {
+            ids[i] = row[i] >>> 1;
+        }
+        return ids;
+    }
+
+    private static boolean contains(int[] row, int userId) {
+        return indexOf(row, userId) >= 0;
+    }
+
+    // entries are sorted and hold at most one of userId << 1 and userId << 1 | 1
+    private static int indexOf(int[] row, int userId) {
+        int index = Arrays.binarySearch(row, userId << 1);
+        if (index < 0) {
+            index = -index - 1;
+            if (index >= row.length || row[index] >>> 1 != userId) {
+                return -1;
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Sorted rows of encoded entries per user: compact arrays plus a buffer of rewritten rows.
+     * Not thread-safe; guarded by the graph lock.
+     */
+    private static class Adjacency {
+        private static final int[] EMPTY = new int[0];
+
+        private final int maxBuffered;
+        private int[] offsets = new int[1];
+        private int[] entries = EMPTY;
+        private final Map<Integer, int[]> buffered = new HashMap<>();
+
+        Adjacency(int maxBuffered) {
+            this.maxBuffered = maxBuffered;
+        }
+
+        /**
+         * Builds the rows from parallel arrays of encoded keys (the flag is ignored) and entries.
+         */
+        void build(IntList keys, IntList values) {
+            buffered.clear();
+            int nodes = 0;
+            for (int i = 0; i < keys.size; i++) {
+                nodes = Math.max(nodes, (keys.values[i] >>> 1) + 1);
+            }
+            offsets = new int[nodes + 1];
+            for (int i = 0; i < keys.size; i++) {
+                offsets[(keys.values[i] >>> 1) + 1]++;
+            }
+            for (int node = 0; node < nodes; node++) {
+                offsets[node + 1] += offsets[node];
+            }
+            int[] next = Arrays.copyOf(offsets, nodes);
+            entries = new int[keys.size];
+            for (int i = 0; i < keys.size; i++) {
+                entries[next[keys.values[i] >>> 1]++] = values.values[i];
+            }
+            for (int node = 0; node < nodes; node++) {
+                Arrays.sort(entries, offsets[node], offsets[node + 1]);
+            }
+        }
+
+        int[] get(int node) {
+            int[] row = buffered.get(node);
+            if (row != null) {
+                return row;
+            }
+            if (node < 0 || node + 1 >= offsets.length) {
+                return EMPTY;
+            }
+            return Arrays.copyOfRange(entries, offsets[node], offsets[node + 1]);
+        }
+
+        /**
+         * Adds the entry, replacing an entry for the same user with the other flag.
+         */
+        void put(int node, int entry) {
+            remove(node, entry >>> 1);
+            int[] row = get(node);
+            int index = Arrays.binarySearch(row, entry);
+            if (index < 0) {
+                index = -index - 1;
+                int[] updated = new int[row.length + 1];
+                System.arraycopy(row, 0, updated, 0, index);
+                updated[index] = entry;
+                System.arraycopy(row, index, updated, index + 1, row.length - index);
+                set(node, updated);
+            }
+        }
+
+        void remove(int node, int userId) {
+            int[] row = get(node);
+            int index = indexOf(row, userId);
+            if (index >= 0) {
+                int[] updated = new int[row.length - 1];
+                System.arraycopy(row, 0, updated, 0, index);
+                System.arraycopy(row, index + 1, updated, index, row.length - index - 1);
+                set(node, updated);
+            }
+        }
+
+        void clear(int node) {
+            if (get(node).length > 0) {
+                set(node, EMPTY);
+            }
+        }
+
+        private void set(int node, int[] row) {
+            buffered.put(node, row);
+            if (buffered.size() >= maxBuffered) {
+                compact();
+            }
+        }
+
+        private void compact() {
+            int nodes = offsets.length - 1;
+            for (int node : buffered.keySet()) {
+                nodes = Math.max(nodes, node + 1);
+            }
+            int[] compactOffsets = new int[nodes + 1];
+            IntList compactEntries = new IntList();
+            for (int node = 0; node < nodes; node++) {
+                for (int entry : get(node)) {
+                    compactEntries.add(entry);
+                }
+                compactOffsets[node + 1] = compactEntries.size;
+            }
+            offsets = compactOffsets;
+            entries = Arrays.copyOf(compactEntries.values, compactEntries.size);
+            buffered.clear();
+        }
+    }
+
+    /**
+     * Growable int array.
+     */
+    private static class IntList {
+        private int[] values = new int[16];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.IntPredicate;
+
+import static ru.yandex.practicum.filmorate.dao.TransactionHooks.afterCommit;
+
+/**
+ * In-memory ranking of films by like count (desc, then id) for GET /films/popular.
+ * Every film is kept in one sorted set per facet it belongs to: all films, its release
+ * year, each of its genres and each genre within its year, so any genre/year query
+ * reads the first K entries of a single set.
+ * <p>
+ * Built from films.like_count at startup and kept current by the storages;
+ * changes made inside a transaction are applied after it commits.
+ * {@link #reload()} is not atomic with concurrent changes and is meant for startup.
+ */
+@Component
+@Slf4j
+public class PopularityIndex {
+
+    private static final int ANY = -1;
+
+    private static final String SQL_SELECT_FILMS =
+            "SELECT id, EXTRACT(YEAR FROM release_date) AS release_year, like_count FROM films";
+    private static final String SQL_SELECT_GENRES = "SELECT film_id, genre_id FROM films_genres";
+
+    private static final Comparator<Rank> BY_POPULARITY =
+            Comparator.comparingInt((Rank rank) -> rank.likes).reversed().thenComparingInt(rank -> rank.filmId);
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Map<Integer, Entry> films = new ConcurrentHashMap<>();
+    private volatile Map<Long, NavigableSet<Rank>> facets = new ConcurrentHashMap<>();
+
+    public PopularityIndex(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+    }
+
+    @PostConstruct
+    public void reload() {
+        Map<Integer, Entry> newFilms = new ConcurrentHashMap<>();
+        jdbcTemplate.query(SQL_SELECT_FILMS, rs -> {
+            int year = rs.getInt("release_year");
+            Entry entry = new Entry(rs.getInt("id"), rs.wasNull() ? ANY : year, new int[0]);
+            entry.likes = rs.getInt("like_count");
+            newFilms.put(entry.filmId, entry);
+        });
+        Map<Integer, List<Integer>> genres = new HashMap<>();
+        jdbcTemplate.query(SQL_SELECT_GENRES, rs -> {
+            genres.computeIfAbsent(rs.getInt("film_id"), id -> new ArrayList<>()).add(rs.getInt("genre_id"));
+        });
+        Map<Long, NavigableSet<Rank>> newFacets = new ConcurrentHashMap<>();
+        for (Entry entry : newFilms.values()) {
+            entry.genreIds = genres.getOrDefault(entry.filmId, List.of()).stream().mapToInt(Integer::intValue).toArray();
+            Rank rank = new Rank(entry.filmId, entry.likes);
+            for (long facet : entry.facets()) {
+                newFacets.computeIfAbsent(facet, f -> new ConcurrentSkipListSet<>(BY_POPULARITY)).add(rank);
+            }
+        }
+        facets = newFacets;
+        films = newFilms;
+        log.debug("popularity index built: {} films, {} facets", newFilms.size(), newFacets.size());
+    }
+
+    /**
+     * Ids of the {@code count} most liked films, optionally restricted to a genre and/or release year.
+     */
+    public List<Integer> top(int count, Integer genreId, Integer year) {
+        NavigableSet<Rank> ranking = facets.get(facet(genreId == null ? ANY : genreId, year == null ? ANY : year));
+        if (ranking == null || count <= 0) {
+            return new ArrayList<>();
+        }
+        Map<Integer, Entry> current = films;
+        List<Integer> result = new ArrayList<>(Math.min(count, 64));
+        Set<Integer> seen = new HashSet<>();
+        for (Rank rank : ranking) {
+            if (counts(current, rank, seen)) {
+                result.add(rank.filmId);
+                if (result.size() == count) {
+                    break;
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds a film or changes its year and genres, keeping its likes.
+     */
+    public void putFilm(int filmId, LocalDate releaseDate, Collection<Integer> genreIds) {
+        int year = releaseDate == null ? ANY : releaseDate.getYear();
+        int[] genres = genreIds.stream().distinct().mapToInt(Integer::intValue).toArray();
+        afterCommit(() -> {
+            Entry entry = films.computeIfAbsent(filmId, id -> new Entry(id, year, genres));
+            synchronized (entry) {
+                Rank rank = new Rank(filmId, entry.likes);
+                long[] left = entry.facets();
+                entry.year = year;
+                entry.genreIds = genres;
+                long[] joined = entry.facets();
+                // facets the film stays in keep its rank, so readers of them never miss it
+                link(joined, rank);
+                unlink(Arrays.stream(left).filter(facet -> Arrays.stream(joined).noneMatch(f -> f == facet))
+                        .toArray(), rank);
+            }
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        afterCommit(() -> {
+            Entry entry = films.remove(filmId);
+            if (entry != null) {
+                synchronized (entry) {
+                    unlink(entry.facets(), new Rank(filmId, entry.likes));
+                }
+            }
+        });
+    }
+
+    public void addLikes(int filmId, int delta) {
+        afterCommit(() -> {
+            Entry entry = films.get(filmId);
+            if (entry == null) {
+                return;
+            }
+            synchronized (entry) {
+                Rank old = new Rank(filmId, entry.likes);
+                Rank moved = new Rank(filmId, old.likes + delta);
+                long[] facets = entry.facets();
+                // the new rank goes in before the likes change and the old one leaves after,
+                // so the film always has a linked rank that readers count
+                link(facets, moved);
+                entry.likes = moved.likes;
+                unlink(facets, old);
+            }
+        });
+    }
+
+    /**
+     * Offers film ids to the visitor most liked first, until it returns false.
+     */
+    public void scan(IntPredicate visitor) {
+        NavigableSet<Rank> ranking = facets.get(facet(ANY, ANY));
+        if (ranking == null) {
+            return;
+        }
+        Map<Integer, Entry> current = films;
+        Set<Integer> seen = new HashSet<>();
+        for (Rank rank : ranking) {
+            if (counts(current, rank, seen) && !visitor.test(rank.filmId)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * While a film moves both of its ranks may be visible, and the iterator may already have read past
+     * the place its new rank goes to. So the first rank of a film that is not below its current likes
+     * counts: a reader then misses a film only if it overtakes the reader, and never sees it twice.
+     */
+    private static boolean counts(Map<Integer, Entry> current, Rank rank, Set<Integer> seen) {
+        Entry entry = current.get(rank.filmId);
+        return entry != null && entry.likes <= rank.likes && seen.add(rank.filmId);
+    }
+
+    /**
+     * Current like count of the film, 0 for an unknown one.
+     */
+    public int likes(int filmId) {
+        Entry entry = films.get(filmId);
+        return entry == null ? 0 : entry.likes;
+    }
+
+    /**
+     * Orders the given film ids as {@link #top} would: most liked first, ties by id.
+     */
+    public List<Integer> rank(Collection<Integer> filmIds) {
+        Map<Integer, Entry> current = films;
+        // likes are read once, so a concurrent change cannot break the sort
+        List<Rank> ranks = new ArrayList<>(filmIds.size());
+        for (int filmId : filmIds) {
+            Entry entry = current.get(filmId);
+            ranks.add(new Rank(filmId, entry == null ? 0 : entry.likes));
+        }
+        ranks.sort(BY_POPULARITY);
+        List<Integer> result = new ArrayList<>(ranks.size());
+        ranks.forEach(rank -> result.add(rank.filmId));
+        return result;
+    }
+
+    public int size() {
+        return films.size();
+    }
+
+    private void link(long[] facets, Rank rank) {
+        for (long facet : facets) {
+            this.facets.computeIfAbsent(facet, f -> new ConcurrentSkipListSet<>(BY_POPULARITY)).add(rank);
+        }
+    }
+
+    private void unlink(long[] facets, Rank rank) {
+        for (long facet : facets) {
+            NavigableSet<Rank> ranking = this.facets.get(facet);
+            if (ranking != null) {
+                ranking.remove(rank);
+            }
+        }
+    }
+
+    private static long facet(int genreId, int year) {
+        return ((long) genreId << 32) | (year & 0xFFFFFFFFL);
+    }
+
+    private static class Entry {
+        private final int filmId;
+        private volatile int year;
+        private volatile int[] genreIds;
+        private volatile int likes;
+
+        private Entry(int filmId, int year, int[] genreIds) {
+            this.filmId = filmId;
+            this.year = year;
+            this.genreIds = genreIds;
+        }
+
+        private long[] facets() {
+            int[] genres = genreIds;
+            int perYear = year == ANY ? 1 : 2;
+            long[] result = new long[perYear * (genres.length + 1)];
+            int i = 0;
+            result[i++] = facet(ANY, ANY);
+            for (int genreId : genres) {
+                result[i++] = facet(genreId, ANY);
+            }
+            if (year != ANY) {
+                result[i++] = facet(ANY, year);
+                for (int genreId : genres) {
+                    result[i++] = facet(genreId, year);
+                }
+            }
+            return result;
+        }
+    }
+
+    private static class Rank {
+        private final int filmId;
+        private final int likes;
+
+        private Rank(int filmId, int likes) {
+            this.filmId = filmId;
+            this.likes = likes;
+        }
+    }
+}
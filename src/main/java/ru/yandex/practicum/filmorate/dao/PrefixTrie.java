@@ -0,0 +1,121 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import java.util.*;
+
+/**
+ * Character trie over the word starts of lower-cased names: "the terminator" is stored
+ * under "the terminator" and "terminator", so a prefix of any word, or of a run of words,
+ * finds it. Each node counts the entries below it, so the cost of collecting a prefix
+ * is known before it is paid. Not thread-safe; {@link SearchIndex} guards it.
+ */
+class PrefixTrie {
+
+    private final Node root = new Node();
+
+    void add(String text, int id) {
+        for (int start : wordStarts(text)) {
+            Node node = root;
+            node.count++;
+            for (int i = start; i < text.length(); i++) {
+                node = node.children.computeIfAbsent(text.charAt(i), c -> new Node());
+                node.count++;
+            }
+            if (node.ids == null) {
+                node.ids = new HashSet<>(2);
+            }
+            node.ids.add(id);
+        }
+    }
+
+    void remove(String text, int id) {
+        for (int start : wordStarts(text)) {
+            remove(root, text, start, id);
+        }
+    }
+
+    /**
+     * Number of entries under the prefix; a name matching at several word starts counts more than once.
+     */
+    int count(String prefix) {
+        Node node = find(prefix);
+        return node == null ? 0 : node.count;
+    }
+
+    /**
+     * Ids of the names that have a word starting with the prefix.
+     */
+    Set<Integer> collect(String prefix) {
+        Set<Integer> ids = new HashSet<>();
+        Node node = find(prefix);
+        if (node != null) {
+            Deque<Node> stack = new ArrayDeque<>();
+            stack.push(node);
+            while (!stack.isEmpty()) {
+                Node next = stack.pop();
+                if (next.ids != null) {
+                    ids.addAll(next.ids);
+                }
+                next.children.values().forEach(stack::push);
+            }
+        }
+        return ids;
+    }
+
+    void clear() {
+        root.children.clear();
+        root.count = 0;
+    }
+
+    /**
+     * Whether the text has a word starting with the prefix, the same test the trie answers.
+     */
+    static boolean matches(String text, String prefix) {
+        for (int start : wordStarts(text)) {
+            if (text.startsWith(prefix, start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Node find(String prefix) {
+        Node node = root;
+        for (int i = 0; i < prefix.length() && node != null; i++) {
+            node = node.children.get(prefix.charAt(i));
+        }
+        return node;
+    }
+
+    // the path exists because the same text was added before
+    private static boolean remove(Node node, String text, int i, int id) {
+        node.count--;
+        if (i == text.length()) {
+            if (node.ids != null) {
+                node.ids.remove(id);
+            }
+        } else {
+            char c = text.charAt(i);
+            Node child = node.children.get(c);
+            if (child != null && remove(child, text, i + 1, id)) {
+                node.children.remove(c);
+            }
+        }
+        return node.count == 0;
+    }
+
+    private static List<Integer> wordStarts(String text) {
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.isLetterOrDigit(text.charAt(i)) && (i == 0 || !Character.isLetterOrDigit(text.charAt(i - 1)))) {
+                starts.add(i);
+            }
+        }
+        return starts;
+    }
+
+    private static class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private Set<Integer> ids;
+        private int count;
+    }
+}
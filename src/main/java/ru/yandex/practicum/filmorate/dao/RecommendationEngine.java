@@ -0,0 +1,284 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.roaringbitmap.FastAggregation;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
+
+import static ru.yandex.practicum.filmorate.dao.TransactionHooks.afterCommit;
+
+/**
+ * In-memory user x film like matrix for GET /users/{id}/recommendations, kept as
+ * compressed bitmaps both per user (liked films) and per film (users who liked it).
+ * <p>
+ * Recommendations follow the former SQL: the {@value #NEIGHBOURS} users sharing the most
+ * likes with the user are the neighbours; every film a neighbour liked and the user did not
+ * is weighted by the sum of the shared-like counts of the neighbours who liked it.
+ * Candidate neighbours are the users who liked any of the user's films; their
+ * intersection cardinalities are computed in parallel on the fork/join pool.
+ * Ties, which the SQL left unordered, go to the lower user or film id.
+ * <p>
+ * Every committed like, unlike, user or film deletion flips its bits and then calls the
+ * listeners, outside the matrix lock, with each user whose likes changed; this is how
+ * {@link RecommendationStore} knows which cached recommendations went stale.
+ */
+@Component
+@Slf4j
+public class RecommendationEngine {
+
+    static final int NEIGHBOURS = 5;
+    // candidates per fork/join leaf task
+    private static final int SPLIT_THRESHOLD = 4096;
+
+    private static final String SQL_SELECT_LIKES = "SELECT user_id, film_id FROM likes_film";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ForkJoinPool pool;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<Integer, RoaringBitmap> filmsByUser = new HashMap<>();
+    private final Map<Integer, RoaringBitmap> usersByFilm = new HashMap<>();
+    private final List<IntConsumer> listeners = new CopyOnWriteArrayList<>();
+
+    public RecommendationEngine(JdbcTemplate jdbcTemplate) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.pool = ForkJoinPool.commonPool();
+    }
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            filmsByUser.clear();
+            usersByFilm.clear();
+            jdbcTemplate.query(SQL_SELECT_LIKES, rs -> {
+                link(rs.getInt("user_id"), rs.getInt("film_id"));
+            });
+            filmsByUser.values().forEach(RoaringBitmap::runOptimize);
+            usersByFilm.values().forEach(RoaringBitmap::runOptimize);
+            log.debug("recommendation matrix built: {} users, {} films", filmsByUser.size(), usersByFilm.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Recommended film ids for the user, highest weight first.
+     */
+    public List<Integer> recommend(int userId) {
+        return recommend(userId, Integer.MAX_VALUE).getFilmIds();
+    }
+
+    /**
+     * The first {@code limit} recommended film ids and the neighbours they came from.
+     */
+    public Recommendation recommend(int userId, int limit) {
+        lock.readLock().lock();
+        try {
+            RoaringBitmap liked = filmsByUser.get(userId);
+            if (liked == null || liked.isEmpty()) {
+                return new Recommendation(new ArrayList<>(), new int[0]);
+            }
+            List<RoaringBitmap> likers = new ArrayList<>(liked.getCardinality());
+            liked.forEach((int filmId) -> likers.add(usersByFilm.get(filmId)));
+            RoaringBitmap candidates = FastAggregation.or(likers.iterator());
+            candidates.remove(userId);
+
+            int[] ids = candidates.toArray();
+            Neighbours neighbours = ids.length > SPLIT_THRESHOLD
+                    ? pool.invoke(new NeighbourSearch(ids, 0, ids.length, liked))
+                    : new NeighbourSearch(ids, 0, ids.length, liked).compute();
+
+            Map<Integer, Integer> weights = new HashMap<>();
+            for (int i = 0; i < neighbours.size; i++) {
+                int common = neighbours.common[i];
+                RoaringBitmap.andNot(filmsByUser.get(neighbours.userIds[i]), liked)
+                        .forEach((int filmId) -> weights.merge(filmId, common, Integer::sum));
+            }
+            List<Integer> result = new ArrayList<>(weights.keySet());
+            result.sort(Comparator.comparing((Integer filmId) -> weights.get(filmId)).reversed()
+                    .thenComparing(Comparator.naturalOrder()));
+            if (result.size() > limit) {
+                result = new ArrayList<>(result.subList(0, limit));
+            }
+            return new Recommendation(result, Arrays.copyOf(neighbours.userIds, neighbours.size));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Registers a listener called, outside the matrix lock, with each user whose likes changed.
+     */
+    public void addListener(IntConsumer listener) {
+        listeners.add(listener);
+    }
+
+    public void addLike(int userId, int filmId) {
+        afterCommit(() -> {
+            write(() -> link(userId, filmId));
+            notifyListeners(userId);
+        });
+    }
+
+    public void removeLike(int userId, int filmId) {
+        afterCommit(() -> {
+            write(() -> unlink(userId, filmId));
+            notifyListeners(userId);
+        });
+    }
+
+    public void removeUser(int userId) {
+        afterCommit(() -> {
+            write(() -> {
+                RoaringBitmap films = filmsByUser.remove(userId);
+                if (films != null) {
+                    films.forEach((int filmId) -> removeFrom(usersByFilm, filmId, userId));
+                }
+            });
+            notifyListeners(userId);
+        });
+    }
+
+    public void removeFilm(int filmId) {
+        afterCommit(() -> {
+            RoaringBitmap users = new RoaringBitmap();
+            write(() -> {
+                RoaringBitmap likers = usersByFilm.remove(filmId);
+                if (likers != null) {
+                    likers.forEach((int userId) -> removeFrom(filmsByUser, userId, filmId));
+                    users.or(likers);
+                }
+            });
+            users.forEach((int userId) -> notifyListeners(userId));
+        });
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void notifyListeners(int userId) {
+        for (IntConsumer listener : listeners) {
+            listener.accept(userId);
+        }
+    }
+
+    private void link(int userId, int filmId) {
+        filmsByUser.computeIfAbsent(userId, id -> new RoaringBitmap()).add(filmId);
+        usersByFilm.computeIfAbsent(filmId, id -> new RoaringBitmap()).add(userId);
+    }
+
+    private void unlink(int userId, int filmId) {
+        removeFrom(filmsByUser, userId, filmId);
+        removeFrom(usersByFilm, filmId, userId);
+    }
+
+    private static void removeFrom(Map<Integer, RoaringBitmap> bitmaps, int key, int value) {
+        RoaringBitmap bitmap = bitmaps.get(key);
+        if (bitmap != null) {
+            bitmap.remove(value);
+            if (bitmap.isEmpty()) {
+                bitmaps.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Result of {@link #recommend(int, int)}.
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class Recommendation {
+        private final List<Integer> filmIds;
+        private final int[] neighbours;
+    }
+
+    /**
+     * Best neighbours of a slice of the candidates; slices are split until small enough
+     * and merged pairwise. Runs under the caller's read lock, which excludes writers.
+     */
+    private class NeighbourSearch extends RecursiveTask<Neighbours> {
+        private final int[] candidates;
+        private final int from;
+        private final int to;
+        private final RoaringBitmap liked;
+
+        private NeighbourSearch(int[] candidates, int from, int to, RoaringBitmap liked) {
+            this.candidates = candidates;
+            this.from = from;
+            this.to = to;
+            this.liked = liked;
+        }
+
+        @Override
+        protected Neighbours compute() {
+            if (to - from <= SPLIT_THRESHOLD) {
+                Neighbours best = new Neighbours();
+                for (int i = from; i < to; i++) {
+                    int userId = candidates[i];
+                    best.offer(userId, RoaringBitmap.andCardinality(filmsByUser.get(userId), liked));
+                }
+                return best;
+            }
+            int middle = (from + to) >>> 1;
+            NeighbourSearch left = new NeighbourSearch(candidates, from, middle, liked);
+            left.fork();
+            Neighbours right = new NeighbourSearch(candidates, middle, to, liked).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * The top {@value #NEIGHBOURS} users by shared likes, then by lower id, best first.
+     */
+    private static class Neighbours {
+        private final int[] userIds = new int[NEIGHBOURS];
+        private final int[] common = new int[NEIGHBOURS];
+        private int size;
+
+        private void offer(int userId, int count) {
+            int i = size;
+            while (i > 0 && better(count, userId, common[i - 1], userIds[i - 1])) {
+                i--;
+            }
+            if (i == NEIGHBOURS) {
+                return;
+            }
+            int last = Math.min(size, NEIGHBOURS - 1);
+            System.arraycopy(userIds, i, userIds, i + 1, last - i);
+            System.arraycopy(common, i, common, i + 1, last - i);
+            userIds[i] = userId;
+            common[i] = count;
+            size = Math.min(size + 1, NEIGHBOURS);
+        }
+
+        private Neighbours merge(Neighbours other) {
+            for (int i = 0; i < other.size; i++) {
+                offer(other.userIds[i], other.common[i]);
+            }
+            return this;
+        }
+
+        private static boolean better(int count, int userId, int otherCount, int otherUserId) {
+            return count > otherCount || (count == otherCount && userId < otherUserId);
+        }
+    }
+}
@@ -0,0 +1,262 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Materialised top-{@code size} recommendations per user, so that a read is one map lookup.
+ * <p>
+ * Entries are computed by reads that find no usable entry. Every {@code refresh-interval} a batch
+ * job on its own thread recomputes the stale or half-expired entries read within {@code max-age},
+ * on {@code threads} worker threads, and evicts the others, so only users who ask for
+ * recommendations hold an entry. The {@link RecommendationEngine} reports every user whose likes changed:
+ * that user's own entry is dropped, so they always see their own likes, and the entries of
+ * the users who had them as a neighbour are marked stale. A stale entry is still served for
+ * {@code stale-tolerance}, any entry for at most {@code max-age}. Users who become someone's
+ * neighbour only through a new like are picked up by the batch job or by the age limit.
+ */
+@Component
+@Slf4j
+public class RecommendationStore {
+
+    // change stamps are kept per stripe of user ids rather than per user
+    private static final int STRIPES = 1024;
+
+    private final RecommendationEngine engine;
+    private final int size;
+    private final Duration maxAge;
+    private final Duration staleTolerance;
+    private final Duration refreshInterval;
+    private final ExecutorService workers;
+    private final int threads;
+    private ScheduledExecutorService refresher;
+
+    private final ConcurrentMap<Integer, Entry> entries = new ConcurrentHashMap<>();
+    // neighbour id -> ids of the users whose entries were computed from that neighbour
+    private final ConcurrentMap<Integer, Set<Integer>> dependents = new ConcurrentHashMap<>();
+    private final AtomicLongArray stamps = new AtomicLongArray(STRIPES);
+
+    public RecommendationStore(RecommendationEngine engine,
+                               @Value("${filmorate.recommendations.size:100}") int size,
+                               @Value("${filmorate.recommendations.max-age:PT1H}") Duration maxAge,
+                               @Value("${filmorate.recommendations.stale-tolerance:PT0S}") Duration staleTolerance,
+                               @Value("${filmorate.recommendations.refresh-interval:PT5M}") Duration refreshInterval,
+                               @Value("${filmorate.recommendations.threads:2}") int threads) {
+        this.engine = engine;
+        this.size = size;
+        this.maxAge = maxAge;
+        this.staleTolerance = staleTolerance;
+        this.refreshInterval = refreshInterval;
+        this.threads = threads;
+        AtomicInteger number = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "recommendation-worker-" + number.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        engine.addListener(this::likesChanged);
+    }
+
+    @PostConstruct
+    public void start() {
+        refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "recommendation-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(this::refreshQuietly, refreshInterval.toMillis(), refreshInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * The user's recommendations, computed now if there is no entry within the staleness limits.
+     */
+    public Entry get(int userId) {
+        Instant now = Instant.now();
+        Entry entry = entries.get(userId);
+        if (entry != null && entry.isUsable(now, maxAge, staleTolerance)) {
+            entry.readAt = now;
+            return entry;
+        }
+        return refresh(userId, now);
+    }
+
+    /**
+     * Recomputes the entries read within the maximum age that are stale or past half of it,
+     * and evicts the entries not read within it. Returns the number of entries recomputed.
+     */
+    public int refreshAll() {
+        Instant now = Instant.now();
+        Instant refreshBefore = now.minus(maxAge.dividedBy(2));
+        Instant idleBefore = now.minus(maxAge);
+        List<Integer> due = new ArrayList<>();
+        int evicted = 0;
+        for (Map.Entry<Integer, Entry> cached : entries.entrySet()) {
+            int userId = cached.getKey();
+            Entry entry = cached.getValue();
+            if (entry.readAt.isBefore(idleBefore)) {
+                if (entries.remove(userId, entry)) {
+                    unregister(userId, entry);
+                    evicted++;
+                }
+            } else if (entry.isStale() || entry.getComputedAt().isBefore(refreshBefore)) {
+                due.add(userId);
+            }
+        }
+        List<Callable<Object>> tasks = new ArrayList<>(threads);
+        for (int worker = 0; worker < threads; worker++) {
+            int first = worker;
+            tasks.add(Executors.callable(() -> {
+                for (int i = first; i < due.size(); i += threads) {
+                    Entry entry = entries.get(due.get(i));
+                    if (entry != null) {
+                        refresh(due.get(i), entry.readAt);
+                    }
+                }
+            }));
+        }
+        try {
+            for (Future<Object> done : workers.invokeAll(tasks)) {
+                done.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            log.warn("recommendation refresh failed", e.getCause());
+        }
+        log.debug("recommendations refreshed for {} users, {} idle entries evicted", due.size(), evicted);
+        return due.size();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+        }
+        workers.shutdownNow();
+    }
+
+    private void refreshQuietly() {
+        try {
+            refreshAll();
+        } catch (RuntimeException e) {
+            log.warn("recommendation refresh failed", e);
+        }
+    }
+
+    private Entry refresh(int userId, Instant readAt) {
+        long[] before = snapshotStamps();
+        RecommendationEngine.Recommendation recommendation = engine.recommend(userId, size);
+        Entry entry = new Entry(List.copyOf(recommendation.getFilmIds()), recommendation.getNeighbours(),
+                Instant.now(), null, readAt);
+        Entry previous = entries.put(userId, entry);
+        if (previous != null) {
+            unregister(userId, previous);
+        }
+        for (int neighbour : entry.neighbours) {
+            dependents.computeIfAbsent(neighbour, id -> ConcurrentHashMap.newKeySet()).add(userId);
+        }
+        // a change that raced with the computation is not in the result; a later one finds
+        // the registration above and marks the entry stale itself
+        boolean raced = changedSince(before, userId);
+        for (int neighbour : entry.neighbours) {
+            raced |= changedSince(before, neighbour);
+        }
+        if (raced) {
+            entries.remove(userId, entry);
+        }
+        return entry;
+    }
+
+    private void likesChanged(int userId) {
+        stamps.incrementAndGet(stripe(userId));
+        Entry own = entries.remove(userId);
+        if (own != null) {
+            unregister(userId, own);
+        }
+        Set<Integer> users = dependents.get(userId);
+        if (users != null) {
+            Instant now = Instant.now();
+            for (int dependent : users) {
+                entries.computeIfPresent(dependent, (id, entry) -> entry.isStale() ? entry : entry.markStale(now));
+            }
+        }
+    }
+
+    private void unregister(int userId, Entry entry) {
+        for (int neighbour : entry.neighbours) {
+            dependents.computeIfPresent(neighbour, (id, users) -> {
+                users.remove(userId);
+                return users.isEmpty() ? null : users;
+            });
+        }
+    }
+
+    private long[] snapshotStamps() {
+        long[] snapshot = new long[STRIPES];
+        for (int i = 0; i < STRIPES; i++) {
+            snapshot[i] = stamps.get(i);
+        }
+        return snapshot;
+    }
+
+    private boolean changedSince(long[] snapshot, int userId) {
+        int stripe = stripe(userId);
+        return stamps.get(stripe) != snapshot[stripe];
+    }
+
+    private static int stripe(int userId) {
+        return userId & (STRIPES - 1);
+    }
+
+    /**
+     * One user's materialised recommendations.
+     */
+    @Getter
+    public static class Entry {
+        private final List<Integer> filmIds;
+        private final int[] neighbours;
+        private final Instant computedAt;
+        // when a neighbour's likes changed after the computation, or null
+        private final Instant staleSince;
+        // when the entry was last read; a refresh keeps the previous entry's
+        private volatile Instant readAt;
+
+        private Entry(List<Integer> filmIds, int[] neighbours, Instant computedAt, Instant staleSince,
+                      Instant readAt) {
+            this.filmIds = filmIds;
+            this.neighbours = neighbours;
+            this.computedAt = computedAt;
+            this.staleSince = staleSince;
+            this.readAt = readAt;
+        }
+
+        public boolean isStale() {
+            return staleSince != null;
+        }
+
+        private Entry markStale(Instant now) {
+            return new Entry(filmIds, neighbours, computedAt, now, readAt);
+        }
+
+        private boolean isUsable(Instant now, Duration maxAge, Duration staleTolerance) {
+            return now.isBefore(computedAt.plus(maxAge))
+                    && (staleSince == null || now.isBefore(staleSince.plus(staleTolerance)));
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+
+/**
+ * POST /actuator/referencedata reloads the {@link ReferenceDataRegistry} after the genres or mpa tables
+ * were changed outside of a migration, without restarting the application. Cached films hold the
+ * previous genre and mpa instances, so the {@link FilmCache} is cleared as well.
+ */
+@Component
+@Endpoint(id = "referencedata")
+@RequiredArgsConstructor
+public class ReferenceDataEndpoint {
+
+    private final ReferenceDataRegistry referenceData;
+    private final FilmCache filmCache;
+
+    @WriteOperation
+    public Map<String, Integer> reload() {
+        referenceData.reload();
+        filmCache.invalidateAll();
+        return Map.of("genres", referenceData.getAllGenres().size(), "mpa", referenceData.getAllMpa().size());
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+
+import javax.annotation.PostConstruct;
+import java.util.List;
+
+/**
+ * Immutable in-memory copy of the genres and mpa tables.
+ * Lookups are array-indexed by id and return shared Genre/Mpa instances.
+ * The tables are read at startup; {@link ReferenceDataEndpoint} reloads them after a manual change.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class ReferenceDataRegistry {
+
+    private static final String SQL_FIND_ALL_GENRES = "SELECT genre_id, genre_name FROM genres ORDER BY genre_id";
+    private static final String SQL_FIND_ALL_MPA = "SELECT id, mpa_name FROM mpa ORDER BY id";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private volatile Snapshot snapshot;
+
+    @PostConstruct
+    public void reload() {
+        List<Genre> genres = jdbcTemplate.query(SQL_FIND_ALL_GENRES,
+                (rs, rowNum) -> new Genre(rs.getString("genre_name"), rs.getInt("genre_id")));
+        List<Mpa> mpa = jdbcTemplate.query(SQL_FIND_ALL_MPA,
+                (rs, rowNum) -> new Mpa(rs.getString("mpa_name"), rs.getInt("id")));
+        snapshot = new Snapshot(genres, mpa);
+        log.debug("reference data loaded: {} genres, {} mpa", genres.size(), mpa.size());
+    }
+
+    public List<Genre> getAllGenres() {
+        return snapshot.genres;
+    }
+
+    public Genre getGenreById(int genreId) {
+        Genre[] genresById = snapshot.genresById;
+        if (genreId < 0 || genreId >= genresById.length || genresById[genreId] == null) {
+            throw new NotFoundException("incorrect genre id!");
+        }
+        return genresById[genreId];
+    }
+
+    public List<Mpa> getAllMpa() {
+        return snapshot.mpa;
+    }
+
+    public Mpa getMpaById(int mpaId) {
+        Mpa[] mpaById = snapshot.mpaById;
+        if (mpaId < 0 || mpaId >= mpaById.length || mpaById[mpaId] == null) {
+            throw new NotFoundException("incorrect MPA id!");
+        }
+        return mpaById[mpaId];
+    }
+
+    private static class Snapshot {
+        private final List<Genre> genres;
+        private final Genre[] genresById;
+        private final List<Mpa> mpa;
+        private final Mpa[] mpaById;
+
+        private Snapshot(List<Genre> genres, List<Mpa> mpa) {
+            this.genres = List.copyOf(genres);
+            this.mpa = List.copyOf(mpa);
+            this.genresById = new Genre[genres.stream().mapToInt(Genre::getId).max().orElse(0) + 1];
+            genres.forEach(genre -> genresById[genre.getId()] = genre);
+            this.mpaById = new Mpa[mpa.stream().mapToInt(Mpa::getId).max().orElse(0) + 1];
+            mpa.forEach(m -> mpaById[m.getId()] = m);
+        }
+    }
+}
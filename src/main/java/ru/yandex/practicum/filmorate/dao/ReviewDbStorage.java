@@ -3,27 +3,79 @@ package ru.yandex.practicum.filmorate.dao;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Optional;
+
+import static ru.yandex.practicum.filmorate.dao.TransactionHooks.afterCommit;
 
 @Slf4j
 @Component
 @RequiredArgsConstructor
 public class ReviewDbStorage implements ReviewStorage {
 
+    private static final int MAX_VOTE_ATTEMPTS = 3;
+
+    // Keyset pages, most useful first. A page after (useful, id) is the rest of the reviews with that
+    // useful counter plus the less useful ones, each read as a range of reviews_useful_idx or
+    // reviews_film_id_useful_idx. H2 only reads an index in order when ORDER BY names every column of it,
+    // and prefers the film_id foreign key index unless told otherwise.
+    static final String SQL_FIND_REVIEWS =
+            "SELECT * FROM REVIEWS USE INDEX (REVIEWS_USEFUL_IDX) " +
+            "ORDER BY USEFUL DESC, ID LIMIT ?";
+    static final String SQL_FIND_REVIEWS_AFTER =
+            "SELECT * FROM (" +
+            "    (SELECT * FROM REVIEWS USE INDEX (REVIEWS_USEFUL_IDX) " +
+            "     WHERE USEFUL = ?1 AND ID > ?2 ORDER BY USEFUL DESC, ID LIMIT ?3) " +
+            "    UNION ALL " +
+            "    (SELECT * FROM REVIEWS USE INDEX (REVIEWS_USEFUL_IDX) " +
+            "     WHERE USEFUL < ?1 ORDER BY USEFUL DESC, ID LIMIT ?3)" +
+            ") AS r ORDER BY USEFUL DESC, ID LIMIT ?3";
+    static final String SQL_FIND_FILM_REVIEWS =
+            "SELECT * FROM REVIEWS USE INDEX (REVIEWS_FILM_ID_USEFUL_IDX) " +
+            "WHERE FILM_ID = ?1 ORDER BY FILM_ID, USEFUL DESC, ID LIMIT ?2";
+    static final String SQL_FIND_FILM_REVIEWS_AFTER =
+            "SELECT * FROM (" +
+            "    (SELECT * FROM REVIEWS USE INDEX (REVIEWS_FILM_ID_USEFUL_IDX) " +
+            "     WHERE FILM_ID = ?1 AND USEFUL = ?2 AND ID > ?3 ORDER BY FILM_ID, USEFUL DESC, ID LIMIT ?4) " +
+            "    UNION ALL " +
+            "    (SELECT * FROM REVIEWS USE INDEX (REVIEWS_FILM_ID_USEFUL_IDX) " +
+            "     WHERE FILM_ID = ?1 AND USEFUL < ?2 ORDER BY FILM_ID, USEFUL DESC, ID LIMIT ?4)" +
+            ") AS r ORDER BY USEFUL DESC, ID LIMIT ?4";
+    // the merge returns the grade it replaced, read under the lock of the vote row
+    static final String SQL_MERGE_VOTE =
+            "SELECT GRADE FROM OLD TABLE (" +
+            "    MERGE INTO LIKES_REVIEW (REVIEW_ID, USER_ID, GRADE) KEY (REVIEW_ID, USER_ID) " +
+            "    VALUES (?, ?, ?))";
+    static final String SQL_DELETE_VOTE =
+            "SELECT GRADE FROM OLD TABLE (" +
+            "    DELETE FROM LIKES_REVIEW WHERE REVIEW_ID = ? AND USER_ID = ? AND GRADE = ?)";
+    static final String SQL_FIND_FILM_AND_USEFUL = "SELECT FILM_ID, USEFUL FROM REVIEWS WHERE ID = ?";
+    static final String SQL_ADD_USEFUL =
+            "SELECT FILM_ID, USEFUL FROM FINAL TABLE (" +
+            "    UPDATE REVIEWS SET USEFUL = USEFUL + ? WHERE ID = ?)";
+
     private final JdbcTemplate jdbcTemplate;
+    private final ReviewUsefulAccumulator usefulAccumulator;
+    private final TopReviewsCache topReviewsCache;
 
     @Override
     public Review add(Review review) {
@@ -54,6 +106,8 @@ public class ReviewDbStorage implements ReviewStorage {
             }, key);
 
         review.setId(Objects.requireNonNull(key.getKey()).intValue());
+        review.setUseful(0);
+        topReviewsCache.added(review);
 
         log.debug("Added review with id={}", review.getId());
 
@@ -84,7 +138,9 @@ public class ReviewDbStorage implements ReviewStorage {
 
         log.debug("Updated review with id={}", review.getId());
 
-        return get(review.getId());
+        Review updated = get(review.getId());
+        topReviewsCache.updated(updated);
+        return updated;
     }
 
     @Override
@@ -107,109 +163,147 @@ public class ReviewDbStorage implements ReviewStorage {
 
     @Override
     public void remove(int id) {
-        String sql = "DELETE FROM REVIEWS WHERE ID = ?1";
+        String sql = "SELECT FILM_ID FROM OLD TABLE (DELETE FROM REVIEWS WHERE ID = ?1)";
 
-        jdbcTemplate.update(sql, id);
+        jdbcTemplate.queryForList(sql, Integer.class, id).forEach(filmId -> topReviewsCache.removed(filmId, id));
 
         log.debug("Removed review with id={}", id);
     }
 
     @Override
+    @Transactional
     public void like(int id, int userId) {
-        setLikeOrDislike(id, userId, 1);
+        vote(id, userId, 1);
 
         log.debug("Liked for review with id={} from user id ={}", id, userId);
-
-        updateUseful(id);
     }
 
     @Override
+    @Transactional
     public void dislike(int id, int userId) {
-        setLikeOrDislike(id, userId, -1);
+        vote(id, userId, -1);
 
         log.debug("Disliked for review with id={} from user id ={}", id, userId);
-
-        updateUseful(id);
     }
 
     @Override
+    @Transactional
     public void deleteLike(int id, int userId) {
-        deleteLikeOrDislike(id, userId);
+        deleteVote(id, userId, 1);
 
         log.debug("Deleted like for review with id={} from user id ={}", id, userId);
-
-        updateUseful(id);
     }
 
     @Override
+    @Transactional
     public void deleteDislike(int id, int userId) {
-        deleteLikeOrDislike(id, userId);
+        deleteVote(id, userId, -1);
 
         log.debug("Deleted dislike for review with id={} from user id ={}", id, userId);
-
-        updateUseful(id);
     }
 
     @Override
-    public List<Review> getReviews(int count) {
-        String sql = "SELECT * " +
-                     "FROM REVIEWS " +
-                     "ORDER BY USEFUL DESC " +
-                     "LIMIT ?";
-
-        log.debug("Received list of reviews with counter = {}", count);
+    public ReviewPage getReviews(ReviewCursor after, int count) {
+        log.debug("Received list of reviews after {} with counter = {}", after, count);
 
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeReview(rs), count);
+        if (after == null) {
+            return page(SQL_FIND_REVIEWS, count, count + 1);
+        }
+        return page(SQL_FIND_REVIEWS_AFTER, count, after.getUseful(), after.getId(), count + 1);
     }
 
     @Override
-    public List<Review> getReviewsByFilm(int filmId, int count) {
-        String sql = "SELECT * " +
-                     "FROM REVIEWS " +
-                     "WHERE FILM_ID = ?1 " +
-                     "ORDER BY USEFUL DESC " +
-                     "LIMIT ?2";
-
-        log.debug("Received list of reviews by film id = {} with counter = {}", filmId, count);
-
-        return jdbcTemplate.query(sql, (rs, rowNum) -> makeReview(rs), filmId, count);
+    public ReviewPage getReviewsByFilm(int filmId, ReviewCursor after, int count) {
+        log.debug("Received list of reviews by film id = {} after {} with counter = {}", filmId, after, count);
+
+        if (after == null && count <= topReviewsCache.getHeadSize()) {
+            Optional<ReviewPage> cached = topReviewsCache.get(filmId, count);
+            if (cached.isPresent()) {
+                return cached.get();
+            }
+            int headSize = topReviewsCache.getHeadSize();
+            long cacheVersion = topReviewsCache.version(filmId);
+            ReviewPage head = page(SQL_FIND_FILM_REVIEWS, headSize, filmId, headSize + 1);
+            topReviewsCache.put(filmId, head, cacheVersion);
+            return TopReviewsCache.firstPage(head.getItems(), head.getNextCursor() == null, count);
+        }
+        if (after == null) {
+            return page(SQL_FIND_FILM_REVIEWS, count, filmId, count + 1);
+        }
+        return page(SQL_FIND_FILM_REVIEWS_AFTER, count, filmId, after.getUseful(), after.getId(), count + 1);
     }
 
-    private void updateUseful(int id){
-
-        String sql =    "SELECT " +
-                        "    SUM(GRADE) AS grade " +
-                        "FROM LIKES_REVIEW " +
-                        "WHERE REVIEW_ID = ?";
-
-        SqlRowSet rowSet = jdbcTemplate.queryForRowSet(sql, id);
-
-        int useful = 0;
-        if (rowSet.next()){
-            useful = rowSet.getInt("grade");
+    // asks for one row more than the page holds, to tell whether there is a next page
+    private ReviewPage page(String sql, int count, Object... args) {
+        List<ReviewCursor> keys = new ArrayList<>();
+        List<Review> reviews = jdbcTemplate.query(sql, (rs, rowNum) -> {
+            // the cursor keeps the stored counter, which the listing is ordered by
+            keys.add(new ReviewCursor(rs.getInt("useful"), rs.getInt("id")));
+            return makeReview(rs);
+        }, args);
+
+        if (reviews.size() <= count) {
+            return new ReviewPage(reviews, null);
         }
+        return new ReviewPage(reviews.subList(0, count), keys.get(count - 1));
+    }
 
-        log.debug("Updated useful for review id = {}", id);
+    /**
+     * Sets the user's grade of the review and moves useful by the difference to the previous grade:
+     * 1 for a new like, 0 for a repeated one, 2 for a dislike turned into a like.
+     */
+    private void vote(int id, int userId, int grade) {
+        List<Integer> previous;
+        try {
+            previous = mergeVote(id, userId, grade);
+        } catch (DuplicateKeyException e) {
+            throw e;
+        } catch (DataIntegrityViolationException e) {
+            log.debug("Review with id={} or user with id={} not found", id, userId);
+            throw new NotFoundException("Review with id=" + id + " or user with id=" + userId + " not found");
+        }
 
-        jdbcTemplate.update("UPDATE REVIEWS SET USEFUL = ? WHERE ID = ?", useful, id);
+        addUseful(id, previous.isEmpty() ? grade : grade - previous.get(0));
     }
 
-    private void setLikeOrDislike(int id, int userId, int value){
-        String sql = "INSERT INTO LIKES_REVIEW(REVIEW_ID, USER_ID, GRADE)( " +
-                "SELECT ?1, ?2, ?3 " +
-                "FROM dual " +
-                "WHERE NOT EXISTS ( " +
-                "        SELECT 1 " +
-                "        FROM LIKES_REVIEW " +
-                "        WHERE REVIEW_ID = ?1 AND USER_ID = ?2 " +
-                "    ))";
+    private List<Integer> mergeVote(int id, int userId, int grade) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return jdbcTemplate.queryForList(SQL_MERGE_VOTE, Integer.class, id, userId, grade);
+            } catch (DuplicateKeyException e) {
+                // a concurrent first vote of the same user inserted the row; the retry updates it
+                if (attempt == MAX_VOTE_ATTEMPTS) {
+                    throw e;
+                }
+            }
+        }
+    }
 
-        jdbcTemplate.update(sql, id, userId, value);
+    private void deleteVote(int id, int userId, int grade) {
+        if (!jdbcTemplate.queryForList(SQL_DELETE_VOTE, Integer.class, id, userId, grade).isEmpty()) {
+            addUseful(id, -grade);
+        }
     }
 
-    private void deleteLikeOrDislike(int id, int userId){
-        String sql = "DELETE FROM LIKES_REVIEW where REVIEW_ID = ?1 AND USER_ID = ?2";
-        jdbcTemplate.update(sql, id, userId);
+    private void addUseful(int id, int delta) {
+        if (delta == 0) {
+            return;
+        }
+        // the film and the counter of the review place it in the film's cached top reviews
+        List<int[]> reviews;
+        if (usefulAccumulator.isEnabled()) {
+            reviews = jdbcTemplate.query(SQL_FIND_FILM_AND_USEFUL,
+                    (rs, rowNum) -> new int[]{rs.getInt("film_id"), rs.getInt("useful")}, id);
+            afterCommit(() -> usefulAccumulator.add(id, delta));
+        } else {
+            reviews = jdbcTemplate.query(SQL_ADD_USEFUL,
+                    (rs, rowNum) -> new int[]{rs.getInt("film_id"), rs.getInt("useful")}, delta, id);
+        }
+        for (int[] review : reviews) {
+            topReviewsCache.usefulChanged(review[0], id, delta, () -> review[1] + usefulAccumulator.pending(id));
+        }
+
+        log.debug("Updated useful for review id = {} by {}", id, delta);
     }
 
     private Review makeReview(ResultSet rs) throws SQLException {
@@ -219,7 +313,7 @@ public class ReviewDbStorage implements ReviewStorage {
         review.setIsPositive(rs.getBoolean("isPositive"));
         review.setUserId(rs.getInt("user_id"));
         review.setFilmId(rs.getInt("film_id"));
-        review.setUseful(rs.getInt("useful"));
+        review.setUseful(rs.getInt("useful") + usefulAccumulator.pending(review.getId()));
 
         return review;
     }
@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Optional buffer for reviews.useful changes (filmorate.reviews.useful-accumulator.enabled).
+ * <p>
+ * Votes are still written to likes_review at once; only the change of the review counter is
+ * added to one of {@code stripes} in-memory maps and written by one background thread every
+ * flush-interval, as one transaction of {@code useful = useful + delta} updates. Popular reviews
+ * then no longer lock their row on every vote. Reads add the pending delta, so a single review
+ * is exact outside of a running flush, while review lists are ordered by the stored counters.
+ * <p>
+ * Deltas still pending when the process dies are lost, so the counters are recomputed from
+ * likes_review at startup.
+ */
+@Component
+@Slf4j
+public class ReviewUsefulAccumulator {
+
+    private static final String SQL_ADD_USEFUL = "UPDATE reviews SET useful = useful + ? WHERE id = ?";
+    private static final String SQL_RECOUNT_USEFUL =
+            "UPDATE reviews AS r SET useful = COALESCE((SELECT SUM(grade) FROM likes_review WHERE review_id = r.id), 0)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final Stripe[] stripes;
+    private final Object flushLock = new Object();
+    private ScheduledExecutorService flusher;
+
+    public ReviewUsefulAccumulator(JdbcTemplate jdbcTemplate, PlatformTransactionManager transactionManager,
+                                   MeterRegistry meterRegistry,
+                                   @Value("${filmorate.reviews.useful-accumulator.enabled:false}") boolean enabled,
+                                   @Value("${filmorate.reviews.useful-accumulator.flush-interval:200ms}") Duration flushInterval,
+                                   @Value("${filmorate.reviews.useful-accumulator.stripes:64}") int stripes) {
+        if (stripes <= 0) {
+            throw new IllegalArgumentException("Invalid filmorate.reviews.useful-accumulator.stripes: " + stripes);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.stripes = new Stripe[stripes];
+        for (int i = 0; i < stripes; i++) {
+            this.stripes[i] = new Stripe();
+        }
+        Gauge.builder("filmorate.reviews.useful.pending", this, ReviewUsefulAccumulator::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        int recounted = jdbcTemplate.update(SQL_RECOUNT_USEFUL);
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "useful-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        log.info("review useful accumulator started: flush every {}, {} stripes, {} reviews recounted",
+                flushInterval, stripes.length, recounted);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void add(int reviewId, int delta) {
+        Stripe stripe = stripe(reviewId);
+        synchronized (stripe) {
+            stripe.deltas.merge(reviewId, delta, Integer::sum);
+        }
+    }
+
+    /**
+     * The change of the review's counter that is not written yet.
+     */
+    public int pending(int reviewId) {
+        if (!enabled) {
+            return 0;
+        }
+        Stripe stripe = stripe(reviewId);
+        synchronized (stripe) {
+            return stripe.deltas.getOrDefault(reviewId, 0);
+        }
+    }
+
+    /**
+     * Writes everything accumulated so far. If the write fails the deltas are added back
+     * and the exception is rethrown.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            // while the batch is being written, reads of its reviews miss the swapped deltas
+            List<Object[]> batch = new ArrayList<>();
+            for (Stripe stripe : stripes) {
+                Map<Integer, Integer> deltas;
+                synchronized (stripe) {
+                    if (stripe.deltas.isEmpty()) {
+                        continue;
+                    }
+                    deltas = stripe.deltas;
+                    stripe.deltas = new HashMap<>();
+                }
+                deltas.forEach((reviewId, delta) -> {
+                    if (delta != 0) {
+                        batch.add(new Object[]{delta, reviewId});
+                    }
+                });
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                // all or nothing, so a failed batch can be added back without counting anything twice
+                transactionTemplate.executeWithoutResult(status -> jdbcTemplate.batchUpdate(SQL_ADD_USEFUL, batch));
+            } catch (RuntimeException e) {
+                batch.forEach(row -> add((Integer) row[1], (Integer) row[0]));
+                throw e;
+            }
+            log.debug("flushed useful changes of {} reviews", batch.size());
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.deltas.size();
+            }
+        }
+        return size;
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+    }
+
+    private Stripe stripe(int reviewId) {
+        return stripes[Math.floorMod(reviewId, stripes.length)];
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("useful flush failed, {} reviews kept for retry", size(), e);
+        }
+    }
+
+    private static class Stripe {
+        private Map<Integer, Integer> deltas = new HashMap<>();
+    }
+}
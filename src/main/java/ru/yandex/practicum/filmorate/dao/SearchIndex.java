@@ -0,0 +1,342 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+
+import javax.annotation.PostConstruct;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static ru.yandex.practicum.filmorate.dao.TransactionHooks.afterCommit;
+
+/**
+ * In-memory substring search over film titles and director names for GET /films/search.
+ * <p>
+ * Every lower-cased name is indexed by all its n-grams of 1 to {@value #MAX_GRAM} characters.
+ * A query of up to {@value #MAX_GRAM} characters is a single posting list; a longer one
+ * intersects the posting lists of its {@value #MAX_GRAM}-grams, smallest first, and checks
+ * the few remaining names for the whole query. Results keep the old LIKE '%query%' semantics,
+ * are deduplicated and ranked by the {@link PopularityIndex}.
+ * <p>
+ * For typeahead the names are also kept in a {@link PrefixTrie} over their word starts.
+ * {@link #suggest} ranks films by likes and directors by the likes of all their films,
+ * and returns ids and names only.
+ * <p>
+ * The postings and tries are loaded from films, directors and films_directors at startup.
+ * {@link FilmDbStorage} re-indexes a film's title and director links when the film is saved or
+ * deleted, {@link DirectorDbStorage} does the same for director names, and both changes reach
+ * the index only once the writing transaction has committed.
+ */
+@Component
+@Slf4j
+public class SearchIndex {
+
+    static final int MAX_GRAM = 3;
+    // above this many trie entries, suggestions walk the popularity ranking instead of collecting them
+    static final int MAX_COLLECTED = 256;
+
+    private static final String SQL_SELECT_FILMS = "SELECT id, name FROM films";
+    private static final String SQL_SELECT_DIRECTORS = "SELECT id, name FROM directors";
+    private static final String SQL_SELECT_FILM_DIRECTORS = "SELECT film_id, director_id FROM films_directors";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final PopularityIndex popularityIndex;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final NgramField titles = new NgramField();
+    private final NgramField directorNames = new NgramField();
+    private final Map<Integer, Set<Integer>> filmsByDirector = new HashMap<>();
+    private final Map<Integer, Set<Integer>> directorsByFilm = new HashMap<>();
+
+    public SearchIndex(JdbcTemplate jdbcTemplate, PopularityIndex popularityIndex) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.popularityIndex = popularityIndex;
+    }
+
+    @PostConstruct
+    public void reload() {
+        lock.writeLock().lock();
+        try {
+            titles.clear();
+            directorNames.clear();
+            filmsByDirector.clear();
+            directorsByFilm.clear();
+            jdbcTemplate.query(SQL_SELECT_FILMS, rs -> {
+                titles.put(rs.getInt("id"), rs.getString("name"));
+            });
+            jdbcTemplate.query(SQL_SELECT_DIRECTORS, rs -> {
+                directorNames.put(rs.getInt("id"), rs.getString("name"));
+            });
+            jdbcTemplate.query(SQL_SELECT_FILM_DIRECTORS, rs -> {
+                link(rs.getInt("film_id"), rs.getInt("director_id"));
+            });
+            log.debug("search index built: {} films, {} directors", titles.size(), directorNames.size());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Ids of the films whose title and/or director name contains the query, ignoring case,
+     * most liked first.
+     */
+    public List<Integer> search(String query, boolean byTitle, boolean byDirector) {
+        Set<Integer> found = new HashSet<>();
+        lock.readLock().lock();
+        try {
+            if (byTitle) {
+                found.addAll(titles.match(query));
+            }
+            if (byDirector) {
+                for (int directorId : directorNames.match(query)) {
+                    found.addAll(filmsByDirector.getOrDefault(directorId, Set.of()));
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        return popularityIndex.rank(found);
+    }
+
+    /**
+     * Up to {@code limit} films and/or directors having a word that starts with the prefix,
+     * most liked first; films come before directors with the same likes.
+     */
+    public List<Suggestion> suggest(String prefix, int limit, boolean films, boolean directors) {
+        String text = normalize(prefix).strip();
+        List<Suggestion> result = new ArrayList<>();
+        if (text.isEmpty()) {
+            return result;
+        }
+        List<Integer> scores = new ArrayList<>();
+        lock.readLock().lock();
+        try {
+            if (films) {
+                for (int filmId : suggestFilms(text, limit)) {
+                    result.add(new Suggestion(filmId, titles.displayName(filmId), SuggestionType.FILM));
+                    scores.add(popularityIndex.likes(filmId));
+                }
+            }
+            if (directors) {
+                Map<Integer, Integer> likes = new HashMap<>();
+                for (int directorId : directorNames.prefixes.collect(text)) {
+                    int sum = 0;
+                    for (int filmId : filmsByDirector.getOrDefault(directorId, Set.of())) {
+                        sum += popularityIndex.likes(filmId);
+                    }
+                    likes.put(directorId, sum);
+                }
+                likes.entrySet().stream()
+                        .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                                .thenComparing(Map.Entry.comparingByKey()))
+                        .limit(limit)
+                        .forEach(e -> {
+                            result.add(new Suggestion(e.getKey(), directorNames.displayName(e.getKey()),
+                                    SuggestionType.DIRECTOR));
+                            scores.add(e.getValue());
+                        });
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        // both lists are already ranked, so a stable sort by score merges them
+        Integer[] order = new Integer[result.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingInt((Integer i) -> scores.get(i)).reversed());
+        List<Suggestion> merged = new ArrayList<>(Math.min(limit, order.length));
+        for (int i = 0; i < order.length && merged.size() < limit; i++) {
+            merged.add(result.get(order[i]));
+        }
+        return merged;
+    }
+
+    /**
+     * Adds a film or replaces its title and directors.
+     */
+    public void putFilm(int filmId, String name, Collection<Integer> directorIds) {
+        List<Integer> directors = List.copyOf(directorIds);
+        afterCommit(() -> write(() -> {
+            titles.put(filmId, name);
+            unlinkFilm(filmId);
+            directors.forEach(directorId -> link(filmId, directorId));
+        }));
+    }
+
+    public void removeFilm(int filmId) {
+        afterCommit(() -> write(() -> {
+            titles.remove(filmId);
+            unlinkFilm(filmId);
+        }));
+    }
+
+    /**
+     * Adds a director or renames one.
+     */
+    public void putDirector(int directorId, String name) {
+        afterCommit(() -> write(() -> directorNames.put(directorId, name)));
+    }
+
+    public void removeDirector(int directorId) {
+        afterCommit(() -> write(() -> {
+            directorNames.remove(directorId);
+            Set<Integer> films = filmsByDirector.remove(directorId);
+            if (films != null) {
+                films.forEach(filmId -> removeFromSet(directorsByFilm, filmId, directorId));
+            }
+        }));
+    }
+
+    private List<Integer> suggestFilms(String prefix, int limit) {
+        if (titles.prefixes.count(prefix) <= MAX_COLLECTED) {
+            List<Integer> ranked = popularityIndex.rank(titles.prefixes.collect(prefix));
+            return ranked.size() > limit ? ranked.subList(0, limit) : ranked;
+        }
+        // a common prefix matches many films, so the most liked ones are found near the top
+        List<Integer> found = new ArrayList<>(limit);
+        popularityIndex.scan(filmId -> {
+            String title = titles.name(filmId);
+            if (title != null && PrefixTrie.matches(title, prefix)) {
+                found.add(filmId);
+            }
+            return found.size() < limit;
+        });
+        return found;
+    }
+
+    private void write(Runnable change) {
+        lock.writeLock().lock();
+        try {
+            change.run();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void link(int filmId, int directorId) {
+        filmsByDirector.computeIfAbsent(directorId, id -> new HashSet<>()).add(filmId);
+        directorsByFilm.computeIfAbsent(filmId, id -> new HashSet<>()).add(directorId);
+    }
+
+    private void unlinkFilm(int filmId) {
+        Set<Integer> directors = directorsByFilm.remove(filmId);
+        if (directors != null) {
+            directors.forEach(directorId -> removeFromSet(filmsByDirector, directorId, filmId));
+        }
+    }
+
+    private static void removeFromSet(Map<Integer, Set<Integer>> map, int key, int value) {
+        Set<Integer> values = map.get(key);
+        if (values != null && values.remove(value) && values.isEmpty()) {
+            map.remove(key);
+        }
+    }
+
+    private static String normalize(String text) {
+        return text == null ? "" : text.toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * N-gram postings of one kind of name. Not thread-safe; guarded by the index lock.
+     */
+    private static class NgramField {
+        private final Map<Integer, String> names = new HashMap<>();
+        private final Map<Integer, String> displayNames = new HashMap<>();
+        private final Map<String, Set<Integer>> postings = new HashMap<>();
+        private final PrefixTrie prefixes = new PrefixTrie();
+
+        void put(int id, String name) {
+            remove(id);
+            String text = normalize(name);
+            names.put(id, text);
+            displayNames.put(id, name);
+            for (String gram : grams(text)) {
+                postings.computeIfAbsent(gram, g -> new HashSet<>()).add(id);
+            }
+            prefixes.add(text, id);
+        }
+
+        void remove(int id) {
+            String text = names.remove(id);
+            displayNames.remove(id);
+            if (text != null) {
+                for (String gram : grams(text)) {
+                    removeFromPostings(gram, id);
+                }
+                prefixes.remove(text, id);
+            }
+        }
+
+        String name(int id) {
+            return names.get(id);
+        }
+
+        String displayName(int id) {
+            return displayNames.get(id);
+        }
+
+        Collection<Integer> match(String query) {
+            String text = normalize(query);
+            if (text.isEmpty()) {
+                return names.keySet();
+            }
+            if (text.length() <= MAX_GRAM) {
+                return postings.getOrDefault(text, Set.of());
+            }
+            List<Set<Integer>> lists = new ArrayList<>();
+            for (int i = 0; i + MAX_GRAM <= text.length(); i++) {
+                Set<Integer> list = postings.get(text.substring(i, i + MAX_GRAM));
+                if (list == null) {
+                    return Set.of();
+                }
+                lists.add(list);
+            }
+            lists.sort(Comparator.comparingInt(Set::size));
+            List<Integer> result = new ArrayList<>();
+            for (int id : lists.get(0)) {
+                boolean inAll = true;
+                for (int i = 1; i < lists.size() && inAll; i++) {
+                    inAll = lists.get(i).contains(id);
+                }
+                // the grams can all occur without occurring in a row
+                if (inAll && names.get(id).contains(text)) {
+                    result.add(id);
+                }
+            }
+            return result;
+        }
+
+        int size() {
+            return names.size();
+        }
+
+        void clear() {
+            names.clear();
+            displayNames.clear();
+            postings.clear();
+            prefixes.clear();
+        }
+
+        private void removeFromPostings(String gram, int id) {
+            Set<Integer> list = postings.get(gram);
+            if (list != null && list.remove(id) && list.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+
+        private static Set<String> grams(String text) {
+            Set<String> grams = new HashSet<>();
+            for (int length = 1; length <= MAX_GRAM; length++) {
+                for (int i = 0; i + length <= text.length(); i++) {
+                    grams.add(text.substring(i, i + length));
+                }
+            }
+            return grams;
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntSupplier;
+import java.util.function.Predicate;
+
+/**
+ * Bounded LRU cache of the first {@code head-size} reviews of a film's listing, most useful first.
+ * <p>
+ * Writers change cached heads in place once their transaction commits: a new review is inserted at its
+ * rank, a vote moves the review up or down among its neighbours, a removed review is dropped. A head
+ * that holds only part of the film's reviews may then no longer know what follows its last review,
+ * so such a review is dropped rather than kept out of order, and a vote that lifts an unknown review
+ * past the last one drops the whole head. A head shorter than the requested page is loaded again.
+ * <p>
+ * Writes are counted per stripe of films from the DB write until they are applied, and a load that
+ * overlaps one of its stripe is not cached. Hits, misses, the number of cached reviews and an estimate
+ * of their size are published as filmorate.reviews.top-cache.* metrics.
+ */
+@Component
+@Slf4j
+public class TopReviewsCache {
+
+    // object headers, the boxed fields and the content string of a cached review, without its characters
+    private static final int REVIEW_OVERHEAD_BYTES = 120;
+    private static final int STRIPES = 64;
+    private static final Comparator<Review> ORDER =
+            Comparator.comparingInt(Review::getUseful).reversed().thenComparingInt(Review::getId);
+
+    private final int headSize;
+    private final Map<Integer, Head> heads;
+    private final long[] versions = new long[STRIPES];
+    private final int[] writing = new int[STRIPES];
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private int reviews;
+    private long bytes;
+
+    public TopReviewsCache(@Value("${filmorate.reviews.top-cache.head-size:50}") int headSize,
+                           @Value("${filmorate.reviews.top-cache.max-films:10000}") int maxFilms,
+                           MeterRegistry meterRegistry) {
+        if (headSize <= 0) {
+            throw new IllegalArgumentException("Invalid filmorate.reviews.top-cache.head-size: " + headSize);
+        }
+        this.headSize = headSize;
+        this.heads = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, Head> eldest) {
+                if (size() <= maxFilms) {
+                    return false;
+                }
+                forget(eldest.getValue());
+                return true;
+            }
+        };
+        FunctionCounter.builder("filmorate.reviews.top-cache.hits", hits, AtomicLong::get).register(meterRegistry);
+        FunctionCounter.builder("filmorate.reviews.top-cache.misses", misses, AtomicLong::get).register(meterRegistry);
+        Gauge.builder("filmorate.reviews.top-cache.hit-ratio", this, TopReviewsCache::hitRatio).register(meterRegistry);
+        Gauge.builder("filmorate.reviews.top-cache.films", this, TopReviewsCache::size).register(meterRegistry);
+        Gauge.builder("filmorate.reviews.top-cache.reviews", this, TopReviewsCache::reviewCount)
+                .register(meterRegistry);
+        Gauge.builder("filmorate.reviews.top-cache.bytes", this, TopReviewsCache::estimatedBytes)
+                .baseUnit("bytes").register(meterRegistry);
+    }
+
+    public int getHeadSize() {
+        return headSize;
+    }
+
+    /**
+     * The first page of the film's reviews, or empty when the cached head cannot answer it.
+     */
+    public synchronized Optional<ReviewPage> get(int filmId, int count) {
+        Head head = count <= headSize ? heads.get(filmId) : null;
+        if (head == null || head.reviews.size() < count && !head.complete) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(firstPage(head.reviews, head.complete, count));
+    }
+
+    /**
+     * Returns a stamp to pass to {@link #put(int, ReviewPage, long)} before loading a head from the DB.
+     */
+    public synchronized long version(int filmId) {
+        return versions[stripe(filmId)];
+    }
+
+    /**
+     * Caches a loaded head: the first head-size reviews of the film, with a next cursor if there are more.
+     */
+    public synchronized void put(int filmId, ReviewPage loaded, long loadedAtVersion) {
+        int stripe = stripe(filmId);
+        if (loadedAtVersion != versions[stripe] || writing[stripe] > 0) {
+            return;
+        }
+        Head head = new Head(loaded.getNextCursor() == null);
+        loaded.getItems().forEach(review -> head.add(head.reviews.size(), copy(review)));
+        Head previous = heads.put(filmId, head);
+        if (previous != null) {
+            forget(previous);
+        }
+        remember(head);
+    }
+
+    /**
+     * The first count reviews of a loaded head, shaped like a page of the DB listing.
+     */
+    public static ReviewPage firstPage(List<Review> head, boolean complete, int count) {
+        List<Review> items = new ArrayList<>(Math.min(count, head.size()));
+        for (int i = 0; i < count && i < head.size(); i++) {
+            items.add(copy(head.get(i)));
+        }
+        boolean more = head.size() > count || !complete && head.size() == count;
+        Review last = more ? items.get(count - 1) : null;
+        return new ReviewPage(items, more ? new ReviewCursor(last.getUseful(), last.getId()) : null);
+    }
+
+    // The change methods are called right after the DB write, inside its transaction if there is one.
+
+    public void added(Review review) {
+        Review added = copy(review);
+        onCommit(review.getFilmId(), head -> {
+            // a load that raced with the insert outside of a transaction may already hold it
+            if (head.indexOf(added.getId()) >= 0) {
+                return true;
+            }
+            int index = insertionPoint(head, added);
+            if (index == head.reviews.size() && !head.complete) {
+                return true;
+            }
+            head.add(index, added);
+            if (head.reviews.size() > headSize) {
+                head.remove(headSize);
+                head.complete = false;
+            }
+            return true;
+        });
+    }
+
+    public void updated(Review review) {
+        Review updated = copy(review);
+        onCommit(review.getFilmId(), head -> {
+            int index = head.indexOf(updated.getId());
+            if (index >= 0) {
+                updated.setUseful(head.reviews.get(index).getUseful());
+                head.remove(index);
+                head.add(index, updated);
+            }
+            return true;
+        });
+    }
+
+    public void removed(int filmId, int reviewId) {
+        onCommit(filmId, head -> {
+            int index = head.indexOf(reviewId);
+            if (index >= 0) {
+                head.remove(index);
+            }
+            return true;
+        });
+    }
+
+    /**
+     * Moves the review by a vote. useful gives the review's counter after the vote once the transaction
+     * has committed; it is only read if the review is not in the head.
+     */
+    public void usefulChanged(int filmId, int reviewId, int delta, IntSupplier useful) {
+        onCommit(filmId, head -> {
+            int index = head.indexOf(reviewId);
+            if (index < 0) {
+                Review outsider = new Review();
+                outsider.setId(reviewId);
+                outsider.setUseful(useful.getAsInt());
+                // unknown reviews only come before the last one of a head by a vote that lifted them
+                return !head.complete && insertionPoint(head, outsider) == head.reviews.size();
+            }
+            List<Review> reviews = head.reviews;
+            Review review = reviews.get(index);
+            review.setUseful(review.getUseful() + delta);
+            while (index > 0 && ORDER.compare(review, reviews.get(index - 1)) < 0) {
+                reviews.set(index, reviews.get(index - 1));
+                reviews.set(--index, review);
+            }
+            while (index < reviews.size() - 1 && ORDER.compare(review, reviews.get(index + 1)) > 0) {
+                reviews.set(index, reviews.get(index + 1));
+                reviews.set(++index, review);
+            }
+            if (index == reviews.size() - 1 && delta < 0 && !head.complete) {
+                head.remove(index);
+            }
+            return true;
+        });
+    }
+
+    public synchronized void invalidate(int filmId) {
+        versions[stripe(filmId)]++;
+        Head head = heads.remove(filmId);
+        if (head != null) {
+            forget(head);
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        for (int i = 0; i < STRIPES; i++) {
+            versions[i]++;
+        }
+        heads.clear();
+        reviews = 0;
+        bytes = 0;
+        log.debug("top reviews cache cleared");
+    }
+
+    public synchronized int size() {
+        return heads.size();
+    }
+
+    public synchronized int reviewCount() {
+        return reviews;
+    }
+
+    public synchronized long estimatedBytes() {
+        return bytes;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public double hitRatio() {
+        long hit = hits.get();
+        long total = hit + misses.get();
+        return total == 0 ? 0 : (double) hit / total;
+    }
+
+    // change returns false to drop the head
+    private void onCommit(int filmId, Predicate<Head> change) {
+        int stripe = stripe(filmId);
+        synchronized (this) {
+            versions[stripe]++;
+            writing[stripe]++;
+        }
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCompletion(int status) {
+                    finish(filmId, stripe, status == STATUS_COMMITTED ? change : null);
+                }
+            });
+        } else {
+            finish(filmId, stripe, change);
+        }
+    }
+
+    private synchronized void finish(int filmId, int stripe, Predicate<Head> change) {
+        Head head = change == null ? null : heads.get(filmId);
+        if (head != null) {
+            forget(head);
+            if (change.test(head)) {
+                remember(head);
+            } else {
+                heads.remove(filmId);
+            }
+        }
+        versions[stripe]++;
+        writing[stripe]--;
+    }
+
+    private static int insertionPoint(Head head, Review review) {
+        int low = 0;
+        int high = head.reviews.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (ORDER.compare(head.reviews.get(middle), review) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    private void remember(Head head) {
+        reviews += head.reviews.size();
+        bytes += head.bytes;
+    }
+
+    private void forget(Head head) {
+        reviews -= head.reviews.size();
+        bytes -= head.bytes;
+    }
+
+    private static int stripe(int filmId) {
+        return Math.floorMod(filmId, STRIPES);
+    }
+
+    private static Review copy(Review review) {
+        Review copy = new Review();
+        copy.setId(review.getId());
+        copy.setContent(review.getContent());
+        copy.setIsPositive(review.getIsPositive());
+        copy.setUserId(review.getUserId());
+        copy.setFilmId(review.getFilmId());
+        copy.setUseful(review.getUseful());
+        return copy;
+    }
+
+    private static class Head {
+        private final List<Review> reviews = new ArrayList<>();
+        // whether the head holds every review of the film
+        private boolean complete;
+        private long bytes;
+
+        private Head(boolean complete) {
+            this.complete = complete;
+        }
+
+        private int indexOf(int reviewId) {
+            for (int i = 0; i < reviews.size(); i++) {
+                if (reviews.get(i).getId() == reviewId) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private void add(int index, Review review) {
+            reviews.add(index, review);
+            bytes += sizeOf(review);
+        }
+
+        private void remove(int index) {
+            bytes -= sizeOf(reviews.remove(index));
+        }
+
+        private static long sizeOf(Review review) {
+            return REVIEW_OVERHEAD_BYTES + 2L * review.getContent().length();
+        }
+    }
+}
@@ -8,8 +8,11 @@ import org.springframework.jdbc.support.GeneratedKeyHolder;
 import org.springframework.jdbc.support.KeyHolder;
 import org.springframework.jdbc.support.rowset.SqlRowSet;
 import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Recommendations;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
@@ -17,10 +20,10 @@ import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 import java.sql.Date;
 import java.sql.PreparedStatement;
 import java.sql.Statement;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Optional;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static ru.yandex.practicum.filmorate.dao.TransactionHooks.afterCommit;
 
 @Component
 @Slf4j
@@ -30,21 +33,37 @@ public class UserDbStorage implements UserStorage {
 
     private final JdbcTemplate jdbcTemplate;
     private static final String SQL_SELECT_ALL_FROM_USERS = "select * from users";
+    static final String SQL_FIND_USERS_PAGE = "select * from users where id > ? order by id limit ?";
     private static final String SQL_INSERT_NEW_USER =
             "insert into users (email, login, name, birthday) values (?, ?, ?, ?)";
     private static final String SQL_UPDATE_USER =
             "merge into users (id, email, login, name, birthday) values (?, ?, ?, ?, ?)";
-    private static final String SQL_DELETE_FRIENDSHIP =
-            "DELETE FROM users_friendship WHERE (USER1_ID = ? and USER2_ID = ?) OR (USER2_ID = ? and USER1_ID = ?)";
-    private static final String SQL_REMOVE_FRIEND =
+    static final String SQL_REMOVE_FRIEND =
             "DELETE FROM users_friendship WHERE (USER1_ID = ? and USER2_ID = ?)";
-    private static final String SQL_WRITE_FRIENDSHIP =
-            "insert into users_friendship (user1_id, user2_id , mutually) values (?, ?, ?)";
-    private static final String SQL_FIND_ALL_FRIENDS = "SELECT * FROM users_friendship WHERE USER1_ID = ?";
+    static final String SQL_FIND_USERS_BY_IDS =
+            "SELECT * FROM users WHERE id IN (SELECT id FROM TABLE(id INT = ?)) ORDER BY id";
+
+    // both users are locked in id order, so opposite-direction requests for one pair run one after another
+    static final String SQL_LOCK_USERS =
+            "SELECT id FROM users WHERE id IN (?, ?) ORDER BY id FOR UPDATE";
+    static final String SQL_MERGE_FRIEND = "MERGE INTO users_friendship (user1_id, user2_id, mutually) " +
+            "KEY (user1_id, user2_id) SELECT ?1, ?2, " +
+            "EXISTS (SELECT 1 FROM users_friendship WHERE user1_id = ?2 AND user2_id = ?1)";
+    static final String SQL_SET_MUTUALLY =
+            "UPDATE users_friendship SET mutually = ? WHERE user1_id = ? AND user2_id = ?";
 
     private static final String SQL_DELETE_USER_BY_ID = "DELETE FROM users WHERE id= ?";
+    static final String SQL_FIND_USER_LIKES = "SELECT film_id FROM likes_film WHERE user_id = ?";
+    static final String SQL_UNCOUNT_USER_LIKES = "UPDATE films SET like_count = like_count - 1 " +
+            "WHERE id IN (SELECT film_id FROM likes_film WHERE user_id = ?)";
 
     private final FilmStorage filmStorage;
+    private final FilmCache filmCache;
+    private final PopularityIndex popularityIndex;
+    private final TopReviewsCache topReviewsCache;
+    private final RecommendationEngine recommendationEngine;
+    private final RecommendationStore recommendationStore;
+    private final FriendshipGraph friendshipGraph;
 
     @Override
     public User addUser(User user) {
@@ -78,6 +97,22 @@ public class UserDbStorage implements UserStorage {
         return allUsers;
     }
 
+    @Override
+    public CursorPage<User> getUsersPage(int afterId, int limit) {
+        List<User> users = jdbcTemplate.query(SQL_FIND_USERS_PAGE, (rs, rowNum) -> {
+            User user = new User(rs.getString("email"), rs.getString("login")
+                    , rs.getString("name"), rs.getDate("birthday").toLocalDate());
+            user.setId(rs.getInt("id"));
+            return user;
+        }, afterId, limit + 1);
+        Integer nextCursor = null;
+        if (users.size() > limit) {
+            users = users.subList(0, limit);
+            nextCursor = users.get(limit - 1).getId();
+        }
+        return new CursorPage<>(users, nextCursor);
+    }
+
     @Override
     public User updateUser(User user) {
         if (findUserById(user.getId()).isPresent()) {
@@ -98,7 +133,7 @@ public class UserDbStorage implements UserStorage {
             User user = new User(userRows.getString("email"), userRows.getString("login")
                     , userRows.getString("name"), userRows.getDate("birthday").toLocalDate());
             user.setId(userRows.getInt("id"));
-            user.setFriends(findAllFriends(user));
+            user.setFriends(friendshipGraph.friendMap(user.getId()));
             return Optional.of(user);
         } else {
             return Optional.empty();
@@ -106,6 +141,43 @@ public class UserDbStorage implements UserStorage {
     }
 
 
+    @Override
+    public List<User> findUsersByIds(Collection<Integer> ids, boolean withFriends) {
+        List<User> users = jdbcTemplate.query(SQL_FIND_USERS_BY_IDS, (rs, rowNum) -> {
+            User user = new User(rs.getString("email"), rs.getString("login")
+                    , rs.getString("name"), rs.getDate("birthday").toLocalDate());
+            user.setId(rs.getInt("id"));
+            if (withFriends) {
+                user.setFriends(friendshipGraph.friendMap(user.getId()));
+            }
+            return user;
+        }, (Object) ids.toArray(new Integer[0]));
+        log.debug("loaded {} of {} users", users.size(), ids.size());
+        return users;
+    }
+
+    @Override
+    public List<User> findFriends(int userId, boolean withFriends) {
+        return findUsersByIds(boxed(friendshipGraph.friends(userId)), withFriends);
+    }
+
+    @Override
+    public List<User> findCommonFriends(int userId, int otherId, boolean withFriends) {
+        return findUsersByIds(boxed(friendshipGraph.commonFriends(userId, otherId)), withFriends);
+    }
+
+    @Override
+    public List<User> findFriendSuggestions(int userId, int limit) {
+        List<Integer> ranked = boxed(friendshipGraph.suggestions(userId, limit));
+        Map<Integer, User> users = new HashMap<>();
+        findUsersByIds(ranked, true).forEach(user -> users.put(user.getId(), user));
+        return ranked.stream().map(users::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private static List<Integer> boxed(int[] ids) {
+        return Arrays.stream(ids).boxed().collect(Collectors.toList());
+    }
+
     private void setName(User user) {
         if (user.getName() == null || user.getName().isBlank()) {
             user.setName(user.getLogin());
@@ -113,81 +185,64 @@ public class UserDbStorage implements UserStorage {
     }
 
     @Override
-    public void updateFriendship(User user1, User user2, Boolean mutually) {
-        jdbcTemplate.update(SQL_DELETE_FRIENDSHIP, user1.getId(), user2.getId(), user1.getId(), user2.getId());
-        jdbcTemplate.update(SQL_WRITE_FRIENDSHIP, user1.getId(), user2.getId(), mutually);
-        log.debug("correct update friendship for  users {}, {}", user1.getId(), user2.getId());
+    @Transactional
+    public void addFriend(int userId, int friendId) {
+        lockUsers(userId, friendId);
+        jdbcTemplate.update(SQL_MERGE_FRIEND, userId, friendId);
+        jdbcTemplate.update(SQL_SET_MUTUALLY, true, friendId, userId);
+        friendshipGraph.syncPair(userId, friendId);
+        log.debug("user {} added friend {}", userId, friendId);
     }
 
     @Override
-    public HashMap<Integer, Boolean> findAllFriends(User user) {
-        HashMap<Integer, Boolean> friendsMap = new HashMap<>();
-        SqlRowSet userRows = jdbcTemplate.queryForRowSet(SQL_FIND_ALL_FRIENDS, user.getId());
-        while (userRows.next()) {
-            friendsMap.put(userRows.getInt("user2_id"), userRows.getBoolean("mutually"));
+    @Transactional
+    public void removeFriend(int userId, int friendId) {
+        lockUsers(userId, friendId);
+        jdbcTemplate.update(SQL_REMOVE_FRIEND, userId, friendId);
+        jdbcTemplate.update(SQL_SET_MUTUALLY, false, friendId, userId);
+        friendshipGraph.syncPair(userId, friendId);
+        log.debug("user {} removed friend {}", userId, friendId);
+    }
+
+    private void lockUsers(int userId, int friendId) {
+        List<Integer> locked = jdbcTemplate.queryForList(SQL_LOCK_USERS, Integer.class, userId, friendId);
+        for (int id : new int[]{userId, friendId}) {
+            if (!locked.contains(id)) {
+                throw new NotFoundException(String.format("User by id %d not found", id));
+            }
         }
-        return friendsMap;
     }
 
     @Override
-    public void removeFriends(User user1, User user2) {
-        jdbcTemplate.update(SQL_REMOVE_FRIEND, user1.getId(), user2.getId());
-        if (user2.getFriends().containsKey(user1.getId())) {
-            updateFriendship(user2, user1, false);
-        }
+    public HashMap<Integer, Boolean> findAllFriends(User user) {
+        return friendshipGraph.friendMap(user.getId());
     }
 
     @Override
+    @Transactional
     public void deleteUser(int id) {
+        List<Integer> likedFilms = jdbcTemplate.queryForList(SQL_FIND_USER_LIKES, Integer.class, id);
+        jdbcTemplate.update(SQL_UNCOUNT_USER_LIKES, id);
         jdbcTemplate.update(SQL_DELETE_USER_BY_ID, id);
+        likedFilms.forEach(filmId -> popularityIndex.addLikes(filmId, -1));
+        recommendationEngine.removeUser(id);
+        friendshipGraph.removeUser(id);
+        filmCache.invalidateAll(); //likes of the user are removed by cascade
+        afterCommit(topReviewsCache::invalidateAll); //and so are the user's reviews and votes
     }
 
     @Override
     public List<Film> getRecommendations(int userId) {
-        List<Integer> rec = new ArrayList<>();
+        return findRecommendations(userId).getFilms();
+    }
+
+    @Override
+    public Recommendations findRecommendations(int userId) {
         if (findUserById(userId).isPresent()) {
-            SqlRowSet resultSet = jdbcTemplate.queryForRowSet(queryRecommendations(), userId);
-            while (resultSet.next()) {
-                rec.add(resultSet.getInt("film_id"));
-            }
-            return filmStorage.getListFilmsByListId(rec);
+            RecommendationStore.Entry entry = recommendationStore.get(userId);
+            return new Recommendations(filmStorage.getListFilmsByListId(entry.getFilmIds()), entry.getComputedAt());
         } else {
             throw new NotFoundException("no user with this id");
         }
     }
-
-    private String queryRecommendations() {
-                // 1. Сначала получим фильмы, которые лайкнул рассматриваемый юзер, и поместим их в таблицу REQUESTED_USER_FILMS
-        return "WITH REQUESTED_USER_FILMS AS " +
-                "(SELECT FL.FILM_ID FROM LIKES_FILM FL WHERE FL.USER_ID = ?1), " +
-                // 3. Используя таблицы REQUESTED_USER_FILMS и NEIGHBOURS считаем количество совпадающих лайков
-                // у пользователя и его ближайших соседей, оставляя 5 ближайших соседей с наибольшим количеством
-                // совпадающих лайков. Помещая эти данные в таблицу COMMON_FILMS
-                "COMMON_FILMS AS " +
-                // 2. Определим "ближайших соседей", т.е. пользователей, лайки которых совпадают с лайками нашего юзера
-                // и помещаем их в таблицу NEIGHBOURS
-                "(WITH NEIGHBOURS AS " +
-                "(SELECT LIKES.USER_ID FROM LIKES_FILM AS LIKES " +
-                "INNER JOIN REQUESTED_USER_FILMS ON LIKES.FILM_ID = REQUESTED_USER_FILMS.FILM_ID " +
-                "WHERE LIKES.USER_ID <> ?1) " +
-                "SELECT NEIGHBOURS_LIKES.USER_ID, " +
-                "COUNT(DISTINCT NEIGHBOURS_LIKES.FILM_ID) AS COMMON_COUNT " +
-                "FROM LIKES_FILM AS NEIGHBOURS_LIKES " +
-                "INNER JOIN NEIGHBOURS ON NEIGHBOURS.USER_ID = NEIGHBOURS_LIKES.USER_ID " +
-                "INNER JOIN REQUESTED_USER_FILMS ON NEIGHBOURS_LIKES.FILM_ID = REQUESTED_USER_FILMS.FILM_ID " +
-                "GROUP BY NEIGHBOURS_LIKES.USER_ID " +
-                "ORDER BY COUNT(DISTINCT NEIGHBOURS_LIKES.FILM_ID) DESC " +
-                "LIMIT 5) " +
-                // колонка FILM_WEIGHT представляет собой вес фильма.
-                // Считаем как сумма совпадающих лайков ближайшего соседа и нашего пользователя. То есть, чем в больше
-                // количестве фильмов мнение юзера и соседа совпало, тем больший вес будет иметь оценка данного соседа по данному фильму для пользователя.
-                "SELECT SUM(COMMON_FILMS.COMMON_COUNT) AS FILM_WEIGHT, " +
-                "F_LIKES.FILM_ID FROM LIKES_FILM AS F_LIKES " +
-                "INNER JOIN COMMON_FILMS ON F_LIKES.USER_ID = COMMON_FILMS.USER_ID " +
-                "LEFT JOIN REQUESTED_USER_FILMS ON F_LIKES.FILM_ID = REQUESTED_USER_FILMS.FILM_ID " +
-                "WHERE REQUESTED_USER_FILMS.FILM_ID IS NULL " +
-                "GROUP BY F_LIKES.FILM_ID " +
-                "ORDER BY SUM(COMMON_FILMS.COMMON_COUNT) DESC";
-    }
-
 }
@@ -0,0 +1,17 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+/**
+ * A like ({@code like == true}) or unlike of a film by a user, as queued for a batched write.
+ */
+@Data
+public class LikeChange {
+    private final int filmId;
+    private final int userId;
+    private final boolean like;
+
+    public long key() {
+        return ((long) filmId << 32) | (userId & 0xFFFFFFFFL);
+    }
+}
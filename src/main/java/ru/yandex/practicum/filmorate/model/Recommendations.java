@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Recommended films and when they were computed.
+ */
+@Data
+public class Recommendations {
+
+    private final List<Film> films;
+    private final Instant computedAt;
+}
@@ -0,0 +1,28 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+/**
+ * Position in a review listing, which is ordered by useful descending, then by id:
+ * the useful counter and id of the last review of a page. Written as {@code <useful>_<id>}.
+ */
+@Data
+public class ReviewCursor {
+
+    private final int useful;
+    private final int id;
+
+    public static ReviewCursor parse(String cursor) {
+        int separator = cursor.lastIndexOf('_');
+        if (separator <= 0) {
+            throw new IllegalArgumentException("Invalid review cursor: " + cursor);
+        }
+        return new ReviewCursor(Integer.parseInt(cursor.substring(0, separator)),
+                Integer.parseInt(cursor.substring(separator + 1)));
+    }
+
+    @Override
+    public String toString() {
+        return useful + "_" + id;
+    }
+}
@@ -0,0 +1,16 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a review listing, most useful first.
+ * {@code nextCursor} is the position to continue after, or null on the last page.
+ */
+@Data
+public class ReviewPage {
+
+    private final List<Review> items;
+    private final ReviewCursor nextCursor;
+}
@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.model;
+
+import lombok.Data;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+
+/**
+ * One typeahead entry: a film or a director id with its name, without the full entity.
+ */
+@Data
+public class Suggestion {
+
+    private final int id;
+    private final String name;
+    private final SuggestionType type;
+}
@@ -1,7 +1,10 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Event;
 import ru.yandex.practicum.filmorate.model.enums.EventType;
 import ru.yandex.practicum.filmorate.model.enums.OperationType;
@@ -17,12 +20,22 @@ import static ru.yandex.practicum.filmorate.model.enums.OperationType.*;
 @RequiredArgsConstructor
 public class EventService {
 
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final EventStorage eventStorage;
 
     public List<Event> findByUserId(int userId) {
         return eventStorage.findByUserId(userId);
     }
 
+    public CursorPage<Event> findByUserId(int userId, int sinceEventId, int limit) {
+        if (sinceEventId < 0 || limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid sinceEventId or limit");
+        }
+        return eventStorage.findByUserId(userId, sinceEventId, limit);
+    }
+
     public Event addAddedLikeEvent(int userId, int entityId) {
         return eventStorage.add(makeEvent(userId, entityId, LIKE, ADD));
     }
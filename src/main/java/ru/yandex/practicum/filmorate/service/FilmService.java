@@ -6,37 +6,55 @@ import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.server.ResponseStatusException;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
-import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.storage.film.FilmConsumer;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
 
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class FilmService {
+	public static final int MAX_PAGE_SIZE = 1000;
+	public static final int MAX_SUGGESTIONS = 50;
+
     private final FilmStorage filmStorage;
 	private final EventService eventService;
+	private final LikeWriteBehindQueue likeQueue;
 
 
+	/**
+	 * Returns the film with the change applied. With write-behind likes the change is only queued:
+	 * reads show it once it is flushed, and its feed event is recorded on acceptance, so a change
+	 * the flush drops because the film or user was deleted in between still has its event.
+	 */
 	public Film like(int filmId, int userId, UserService userService, boolean like) {
+		// a copy of the film, so changing its likes does not touch what other readers see
 		Film film = getFilmById(filmId);
 		userService.getUserById(userId); //check user exist
+		if (likeQueue.isEnabled()) {
+			if (!likeQueue.offer(new LikeChange(filmId, userId, like))) {
+				throw new ResponseStatusException(HttpStatus.SERVICE_UNAVAILABLE, "Too many likes, retry later");
+			}
+		} else if (like) {
+			filmStorage.addLike(filmId, userId);
+		} else {
+			filmStorage.removeLike(filmId, userId);
+		}
 		if (like) {
 			film.addLike(userId);
-			filmStorage.addLike(filmId, userId);
 			log.debug("add like to film with id={} from user with id={}", filmId, userId);
 			eventService.addAddedLikeEvent(userId, filmId);
 		} else {
 			film.removeLike(userId);
-			filmStorage.removeLike(filmId, userId);
 			log.debug("remove like to film with id={} from user with id={}", filmId, userId);
 			eventService.addRemovedLikeEvent(userId, filmId);
 		}
@@ -48,13 +66,11 @@ public class FilmService {
 			quantity = 10;
 		}
 
-		List<Film> allFilms = getAllFilms();
-		return allFilms.stream().sorted(Comparator.comparing(Film::howManyLikes).reversed())
-				.limit(quantity).collect(Collectors.toList());
+		return filmStorage.topNFilms(quantity);
 	}
 
 	public Film getFilmById(int filmId) {
-		Optional<Film> filmOptional = filmStorage.getAllFilms().stream().filter(f -> f.getId() == filmId).findFirst();
+		Optional<Film> filmOptional = filmStorage.getFilmById(filmId);
 		if (filmOptional.isPresent()) {
 			log.debug("get film by id {}", filmId);
 			return filmOptional.get();
@@ -68,32 +84,37 @@ public class FilmService {
 		return filmStorage.getAllFilms();
 	}
 
-	public Film addFilm(Film film) {
-		return filmStorage.addFilm(film);
+	public CursorPage<Film> getFilmsPage(int afterId, int limit) {
+		if (afterId < 0 || limit <= 0 || limit > MAX_PAGE_SIZE) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid afterId or limit");
+		}
+		return filmStorage.getFilmsPage(afterId, limit);
 	}
 
-	public Film updateFilm(Film film) {
-		return filmStorage.updateFilm(film);
+	public void exportFilms(FilmConsumer consumer) throws IOException {
+		filmStorage.streamAllFilms(consumer);
 	}
 
-	public List<Genre> getAllGenres() {
-		return filmStorage.getAllGenres();
+	public Film addFilm(Film film) {
+		return filmStorage.addFilm(film);
 	}
 
-	public Genre getGenreById(Integer genreId) {
-		return filmStorage.getGenreById(genreId);
+	public Film updateFilm(Film film) {
+		return filmStorage.updateFilm(film);
 	}
 
-	public List<Mpa> getAllMpa() {
-		return filmStorage.getAllMpa();
+	public List<Film> searchFilmsByString(String query, String by) {
+		return filmStorage.searchFilmsByString(query, searchBy(by));
 	}
 
-	public Mpa getMpaById(Integer mpaId) {
-		return filmStorage.getMpaById(mpaId);
+	public List<Suggestion> suggest(String query, String by, int limit) {
+		if (limit <= 0 || limit > MAX_SUGGESTIONS) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid limit");
+		}
+		return filmStorage.suggest(query, limit, searchBy(by));
 	}
 
-	public List<Film> searchFilmsByString(String query, String by) {
-
+	private static String searchBy(String by) {
 		if (by == null) {
 			throw new RuntimeException("searchFilmsByString: 'by' is null");
 		}
@@ -113,9 +134,9 @@ public class FilmService {
 			default:
 				throw new RuntimeException("searchFilmsByString: 'by' has invalid value:" + by);
 		}
-
-		return filmStorage.searchFilmsByString(query, searchBy);
+		return searchBy;
 	}
+
 	public void deleteFilm(int id){
 		getFilmById(id);
 		filmStorage.deleteFilm(id);
@@ -123,13 +144,7 @@ public class FilmService {
 	}
 
     public List<Film> getMostPopularFilmsIntersectionWithFriend(int userId, int friendId) {
-        List<Film> allFilmsUserLiked = filmStorage.getAllFilmsUserLiked(userId);
-        List<Film> allFilmsFriendLiked = filmStorage.getAllFilmsUserLiked(friendId);
-
-        return allFilmsUserLiked.stream()
-                .filter(allFilmsFriendLiked::contains)
-                .sorted((o1, o2) -> o2.getLikes().size() - o1.getLikes().size())
-                .collect(Collectors.toList());
+        return filmStorage.getCommonFilms(userId, friendId);
     }
 
     public List<Film> getFilmByDirector(int directorId, String sortBy) {
@@ -146,6 +161,9 @@ public class FilmService {
 	public List<Film> getPopularFilms(int count, Integer genreId, String year) {
 		Optional<Integer> genreIdOp = Optional.ofNullable(genreId);
 		Optional<String> yearOp = Optional.ofNullable(year);
+		if (yearOp.isPresent() && !yearOp.get().matches("\\d{1,4}")) {
+			throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid year: " + year);
+		}
 		List<Film> popularFilms;
 		if (genreIdOp.isPresent() && yearOp.isPresent()) {
 			popularFilms = filmStorage.getPopularFilms(count, genreIdOp.get(), yearOp.get());
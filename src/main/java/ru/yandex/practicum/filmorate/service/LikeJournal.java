@@ -0,0 +1,183 @@
+package ru.yandex.practicum.filmorate.service;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Append-only log of queued like changes, one "L|U filmId userId" line each, split into
+ * numbered segments. The queue seals the open segment whenever it takes a batch and
+ * deletes the sealed segments once that batch is committed, so after a crash only
+ * changes that might not have reached the DB are replayed.
+ * Not thread-safe except for {@link #sync}; the queue calls the rest under its own lock.
+ * <p>
+ * With fsync an append is only written; {@link #sync} then forces it to disk outside of the
+ * queue lock. Callers wait on each other there, so one force covers every change appended
+ * while the previous force ran.
+ */
+@Slf4j
+class LikeJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "likes-";
+    private static final String SEGMENT_SUFFIX = ".journal";
+
+    private final Path directory;
+    private final boolean fsync;
+    private final List<Path> sealed = new ArrayList<>();
+    private final Object syncLock = new Object();
+    private long nextSegment;
+    private Path current;
+    private volatile FileChannel channel;
+    private volatile long appended;
+    // guarded by syncLock
+    private long forced;
+
+    /**
+     * @param fsync force appends to disk in {@link #sync}; without it appends survive a process crash but not an OS crash
+     */
+    LikeJournal(Path directory, boolean fsync) {
+        this.directory = directory;
+        this.fsync = fsync;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Reads the changes left by a previous run, oldest first. Their segments are
+     * treated as sealed and removed by the next {@link #deleteSealed()}.
+     */
+    List<LikeChange> recover() {
+        List<LikeChange> changes = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(f -> f.getFileName().toString().startsWith(SEGMENT_PREFIX))
+                    .sorted((a, b) -> Long.compare(segmentNumber(a), segmentNumber(b)))
+                    .collect(Collectors.toList());
+            for (Path segment : segments) {
+                for (String line : Files.readAllLines(segment, StandardCharsets.US_ASCII)) {
+                    String[] fields = line.split(" ");
+                    // a torn last line from a crash mid-append is ignored
+                    if (fields.length == 3) {
+                        changes.add(new LikeChange(Integer.parseInt(fields[1]), Integer.parseInt(fields[2]),
+                                "L".equals(fields[0])));
+                    }
+                }
+                sealed.add(segment);
+                nextSegment = Math.max(nextSegment, segmentNumber(segment) + 1);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        log.debug("recovered {} like changes from {} journal segments", changes.size(), sealed.size());
+        return changes;
+    }
+
+    /**
+     * Writes the change to the open segment; returns its sequence number for {@link #sync}.
+     */
+    long append(LikeChange change) {
+        String line = (change.isLike() ? "L " : "U ") + change.getFilmId() + " " + change.getUserId() + "\n";
+        ByteBuffer buffer = ByteBuffer.wrap(line.getBytes(StandardCharsets.US_ASCII));
+        try {
+            if (channel == null) {
+                current = directory.resolve(SEGMENT_PREFIX + nextSegment++ + SEGMENT_SUFFIX);
+                channel = FileChannel.open(current, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.APPEND);
+            }
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return ++appended;
+    }
+
+    /**
+     * With fsync, returns once the append with the given sequence number is on disk.
+     */
+    void sync(long sequence) {
+        if (!fsync) {
+            return;
+        }
+        synchronized (syncLock) {
+            if (forced >= sequence) {
+                return;
+            }
+            // read before the channel: every append counted here is in it, or was forced by a seal
+            long upTo = appended;
+            FileChannel open = channel;
+            if (open != null) {
+                try {
+                    open.force(false);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            forced = upTo;
+        }
+    }
+
+    /**
+     * Closes the open segment; later appends go to a new one.
+     */
+    void seal() {
+        if (channel != null) {
+            synchronized (syncLock) {
+                if (fsync) {
+                    try {
+                        channel.force(false);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    forced = appended;
+                }
+                close();
+            }
+            sealed.add(current);
+        }
+    }
+
+    void deleteSealed() {
+        for (Path segment : sealed) {
+            try {
+                Files.deleteIfExists(segment);
+            } catch (IOException e) {
+                log.warn("could not delete like journal segment {}: {}", segment, e.getMessage());
+            }
+        }
+        sealed.clear();
+    }
+
+    @Override
+    public void close() {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                log.warn("could not close like journal segment {}: {}", current, e.getMessage());
+            }
+            channel = null;
+        }
+    }
+
+    private static long segmentNumber(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+}
@@ -0,0 +1,221 @@
+package ru.yandex.practicum.filmorate.service;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Optional write-behind buffer for likes (filmorate.likes.write-behind.enabled).
+ * <p>
+ * Changes are coalesced by (film, user), so only the last like or unlike of a pair is written,
+ * and are flushed by one background thread every flush-interval, or as soon as batch-size
+ * pairs are pending, through {@link FilmStorage#applyLikes} in a single transaction.
+ * When capacity pairs are pending, {@link #offer} waits up to offer-timeout and then refuses.
+ * <p>
+ * durability: none keeps changes only in memory; journal appends each accepted change to a
+ * file in journal-dir before acknowledging it, which survives a process crash; fsync also
+ * forces it to disk before acknowledging, outside of the queue lock and with one force for
+ * all changes appended meanwhile. Journaled changes are replayed at startup.
+ */
+@Service
+@Slf4j
+public class LikeWriteBehindQueue {
+
+    private final FilmStorage filmStorage;
+    private final boolean enabled;
+    private final Duration flushInterval;
+    private final int batchSize;
+    private final int capacity;
+    private final Duration offerTimeout;
+    private final LikeJournal journal;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final Object flushLock = new Object();
+    private final AtomicBoolean flushRequested = new AtomicBoolean();
+    private Map<Long, LikeChange> pending = new LinkedHashMap<>();
+    private ScheduledExecutorService flusher;
+
+    public LikeWriteBehindQueue(FilmStorage filmStorage, MeterRegistry meterRegistry,
+                                @Value("${filmorate.likes.write-behind.enabled:false}") boolean enabled,
+                                @Value("${filmorate.likes.write-behind.flush-interval:200ms}") Duration flushInterval,
+                                @Value("${filmorate.likes.write-behind.batch-size:1000}") int batchSize,
+                                @Value("${filmorate.likes.write-behind.capacity:100000}") int capacity,
+                                @Value("${filmorate.likes.write-behind.offer-timeout:100ms}") Duration offerTimeout,
+                                @Value("${filmorate.likes.write-behind.durability:none}") String durability,
+                                @Value("${filmorate.likes.write-behind.journal-dir:./db/likes-journal}") Path journalDir) {
+        this.filmStorage = filmStorage;
+        this.enabled = enabled;
+        this.flushInterval = flushInterval;
+        this.batchSize = batchSize;
+        this.capacity = capacity;
+        this.offerTimeout = offerTimeout;
+        switch (durability) {
+            case "none":
+                this.journal = null;
+                break;
+            case "journal":
+            case "fsync":
+                this.journal = enabled ? new LikeJournal(journalDir, "fsync".equals(durability)) : null;
+                break;
+            default:
+                throw new IllegalArgumentException("Invalid filmorate.likes.write-behind.durability: " + durability);
+        }
+        Gauge.builder("filmorate.likes.queue.size", this, LikeWriteBehindQueue::size).register(meterRegistry);
+    }
+
+    @PostConstruct
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        if (journal != null) {
+            journal.recover().forEach(change -> pending.put(change.key(), change));
+            flushQuietly();
+        }
+        flusher = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "like-flusher"));
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushInterval.toMillis(), flushInterval.toMillis(),
+                TimeUnit.MILLISECONDS);
+        log.info("like write-behind started: flush every {}, batch {}, capacity {}, journal {}",
+                flushInterval, batchSize, capacity, journal != null);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Queues a change, replacing a pending change of the same film and user.
+     * Returns false if the queue stayed full for offer-timeout.
+     */
+    public boolean offer(LikeChange change) {
+        long key = change.key();
+        int size;
+        long sequence = 0;
+        lock.lock();
+        try {
+            long nanos = offerTimeout.toNanos();
+            while (pending.size() >= capacity && !pending.containsKey(key)) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            if (journal != null) {
+                sequence = journal.append(change);
+            }
+            pending.put(key, change);
+            size = pending.size();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            lock.unlock();
+        }
+        if (journal != null) {
+            journal.sync(sequence);
+        }
+        if (size >= batchSize && flusher != null && !flusher.isShutdown() && flushRequested.compareAndSet(false, true)) {
+            flusher.execute(this::flushQuietly);
+        }
+        return true;
+    }
+
+    /**
+     * Writes everything queued so far. If the write fails the changes are queued again,
+     * behind any newer change of the same pair, and the exception is rethrown.
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            flushRequested.set(false);
+            Map<Long, LikeChange> batch;
+            lock.lock();
+            try {
+                if (pending.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                pending = new LinkedHashMap<>();
+                if (journal != null) {
+                    journal.seal();
+                }
+                notFull.signalAll();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                filmStorage.applyLikes(batch.values());
+            } catch (RuntimeException e) {
+                lock.lock();
+                try {
+                    batch.forEach(pending::putIfAbsent);
+                } finally {
+                    lock.unlock();
+                }
+                throw e;
+            }
+
+            if (journal != null) {
+                lock.lock();
+                try {
+                    journal.deleteSealed();
+                } finally {
+                    lock.unlock();
+                }
+            }
+            log.debug("flushed {} like changes", batch.size());
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return pending.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (flusher == null) {
+            return;
+        }
+        flusher.shutdown();
+        try {
+            flusher.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushQuietly();
+        if (journal != null) {
+            journal.close();
+        }
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            log.error("like flush failed, {} changes kept for retry", size(), e);
+        }
+    }
+}
@@ -1,21 +1,38 @@
 package ru.yandex.practicum.filmorate.service;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 
-import java.util.List;
-
 @Service
 @RequiredArgsConstructor
 public class ReviewService {
 
+    public static final int MAX_PAGE_SIZE = 1000;
+
     private final ReviewStorage storage;
     private final EventService eventService;
 
-    public List<Review> getReviews(int filmId, int count) {
-        return filmId == -1 ? storage.getReviews(count) : storage.getReviewsByFilm(filmId, count);
+    /**
+     * A page of the reviews of the film, or of all films when filmId is -1.
+     * cursor is the nextCursor of the previous page, or null for the first page.
+     */
+    public ReviewPage getReviews(int filmId, String cursor, int count) {
+        if (count <= 0 || count > MAX_PAGE_SIZE) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid count");
+        }
+        ReviewCursor after;
+        try {
+            after = cursor == null ? null : ReviewCursor.parse(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid cursor");
+        }
+        return filmId == -1 ? storage.getReviews(after, count) : storage.getReviewsByFilm(filmId, after, count);
     }
 
     public Review addReview(Review review) {
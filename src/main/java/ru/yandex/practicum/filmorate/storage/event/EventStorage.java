@@ -1,5 +1,6 @@
 package ru.yandex.practicum.filmorate.storage.event;
 
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Event;
 
 import java.util.List;
@@ -9,4 +10,10 @@ public interface EventStorage {
     Event add(Event event);
 
     List<Event> findByUserId(int userId);
+
+    /**
+     * Up to {@code limit} events of the user with ids above {@code sinceEventId}, oldest first.
+     * The cursor is the id of the last returned event, or sinceEventId if there is none.
+     */
+    CursorPage<Event> findByUserId(int userId, int sinceEventId, int limit);
 }
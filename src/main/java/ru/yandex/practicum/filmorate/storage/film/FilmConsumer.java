@@ -0,0 +1,15 @@
+package ru.yandex.practicum.filmorate.storage.film;
+
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.io.IOException;
+
+/**
+ * Receives films one by one from {@link FilmStorage#streamAllFilms(FilmConsumer)}.
+ * Throwing stops the stream and releases its cursors.
+ */
+@FunctionalInterface
+public interface FilmConsumer {
+
+    void accept(Film film) throws IOException;
+}
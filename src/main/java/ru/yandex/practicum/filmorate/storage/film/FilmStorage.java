@@ -1,10 +1,13 @@
 package ru.yandex.practicum.filmorate.storage.film;
 
 
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
-import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
-import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.model.Suggestion;
 
+import java.io.IOException;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -14,31 +17,40 @@ public interface FilmStorage {
 
     List<Film> getAllFilms();
 
+    CursorPage<Film> getFilmsPage(int afterId, int limit);
 
-    Optional<Film> getFilmById(int filmId);
-
-    Film updateFilm(Film film);
+    void streamAllFilms(FilmConsumer consumer) throws IOException;
 
-    List<Genre> getAllGenres();
 
-    Genre getGenreById(int genreId);
-
-    List<Mpa> getAllMpa();
+    Optional<Film> getFilmById(int filmId);
 
-    Mpa getMpaById(Integer mpaId);
+    Film updateFilm(Film film);
 
     void addLike(int filmId, int userId);
 
     void removeLike(int filmId, int userId);
 
+    void applyLikes(Collection<LikeChange> changes);
+
     List<Film> topNFilms(int count);
 
     List<Film> searchFilmsByString(String query, String searchBy);
 
+    /**
+     * Typeahead: films and/or directors (searchBy title, director or both) with a word
+     * starting with the prefix, most liked first.
+     */
+    List<Suggestion> suggest(String prefix, int limit, String searchBy);
+
     void deleteFilm(int id);
 
     List<Film> getAllFilmsUserLiked(int userId);
 
+    /**
+     * Films liked by both users, most liked first.
+     */
+    List<Film> getCommonFilms(int userId, int friendId);
+
     List<Film> getFilmByDirector(int directorId, String sortBy);
 
     List<Film> getListFilmsByListId(List<Integer> ids);
@@ -1,8 +1,8 @@
 package ru.yandex.practicum.filmorate.storage.review;
 
 import ru.yandex.practicum.filmorate.model.Review;
-
-import java.util.List;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 
 public interface ReviewStorage {
 
@@ -16,7 +16,10 @@ public interface ReviewStorage {
     void deleteLike(int id, int userId);
     void deleteDislike(int id, int userId);
 
-    List<Review> getReviews(int count);
-    List<Review> getReviewsByFilm(int filmId, int count);
+    /**
+     * Up to count reviews after the cursor, most useful first, then by id; a null cursor starts at the top.
+     */
+    ReviewPage getReviews(ReviewCursor after, int count);
+    ReviewPage getReviewsByFilm(int filmId, ReviewCursor after, int count);
 
 }
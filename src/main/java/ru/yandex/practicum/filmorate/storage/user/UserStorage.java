@@ -1,8 +1,11 @@
 package ru.yandex.practicum.filmorate.storage.user;
 
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Recommendations;
 import ru.yandex.practicum.filmorate.model.User;
 
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Optional;
@@ -14,17 +17,42 @@ public interface UserStorage {
 
 	List<User> getAllUsers();
 
-	User updateUser(User user);
+	CursorPage<User> getUsersPage(int afterId, int limit);
 
-	void updateFriendship(User user1, User user2, Boolean mutually);
+	User updateUser(User user);
 
 	Optional<User> findUserById(int userId);
 
 	HashMap<Integer, Boolean> findAllFriends(User user);
 
-	void removeFriends(User user, User userById);
+	/**
+	 * Users with the given ids, ordered by id; unknown ids are skipped.
+	 * Their friend maps are filled only if {@code withFriends} is set.
+	 */
+	List<User> findUsersByIds(Collection<Integer> ids, boolean withFriends);
+
+	List<User> findFriends(int userId, boolean withFriends);
+
+	List<User> findCommonFriends(int userId, int otherId, boolean withFriends);
+
+	/**
+	 * Up to {@code limit} friends of the user's friends, most shared friends first.
+	 */
+	List<User> findFriendSuggestions(int userId, int limit);
+
+	/**
+	 * Adds the friend in one transaction; both rows become mutual if the friend already has the user.
+	 */
+	void addFriend(int userId, int friendId);
+
+	/**
+	 * Removes the friend in one transaction; the friend's row for the user, if any, stops being mutual.
+	 */
+	void removeFriend(int userId, int friendId);
 
 	void deleteUser(int id);
 
     List<Film> getRecommendations(int userId);
+
+    Recommendations findRecommendations(int userId);
 }
@@ -1,2 +0,0 @@
-INSERT  INTO genres (genre_name) VALUES ('Комедия'), ('Драма'), ('Мультфильм'), ('Триллер'), ('Документальный'),('Боевик');
-INSERT  INTO mpa (id, mpa_name) VALUES (1,'G'), (2,'PG'), (3,'PG-13'), (4,'R'), (5,'NC-17');
\ No newline at end of file
@@ -1,24 +1,13 @@
---DROP for testing in postman
-DROP TABLE IF EXISTS events;
-DROP TABLE IF EXISTS FILMS_MPA;
-DROP TABLE IF EXISTS MPA ;
-DROP TABLE IF EXISTS FILMS_GENRES;
-DROP TABLE IF EXISTS GENRES;
-DROP TABLE IF EXISTS LIKES_FILM;
-DROP TABLE IF EXISTS films_directors;
-DROP TABLE IF EXISTS likes_review;
-DROP TABLE IF EXISTS reviews;
-DROP TABLE IF EXISTS directors;
-DROP TABLE IF EXISTS films;
-DROP TABLE IF EXISTS users_friendship;
-DROP TABLE IF EXISTS users;
-
 CREATE TABLE IF NOT EXISTS films(
 id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 name VARCHAR(50),
 description VARCHAR(200),
 release_date DATE,
-duration INT);
+duration INT,
+like_count INT DEFAULT 0 NOT NULL);
+
+-- popular films are read as a range scan of this index
+CREATE INDEX IF NOT EXISTS films_like_count_idx ON films (like_count DESC, id);
 
 CREATE TABLE IF NOT EXISTS genres(
 genre_id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -50,6 +39,7 @@ id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
 film_id INTEGER REFERENCES films(id) ON DELETE CASCADE,
 user_id INTEGER REFERENCES users(id) ON DELETE CASCADE
 );
+CREATE INDEX IF NOT EXISTS likes_film_user_id_film_id_idx ON likes_film (user_id, film_id);
 
 CREATE TABLE IF NOT EXISTS users_friendship(
 id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -57,6 +47,7 @@ user1_id INTEGER REFERENCES users(id) ON DELETE CASCADE,
 user2_id INTEGER REFERENCES users(id) ON DELETE CASCADE,
 mutually boolean
 );
+CREATE INDEX IF NOT EXISTS users_friendship_user1_id_user2_id_idx ON users_friendship (user1_id, user2_id);
 
 CREATE TABLE IF NOT EXISTS directors(
     id INTEGER GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
@@ -91,4 +82,11 @@ CREATE TABLE IF NOT EXISTS events (
     user_id INTEGER NOT NULL,
     entity_id INTEGER NOT NULL,
     CONSTRAINT fk_events_user_id FOREIGN KEY (user_id) REFERENCES users (id) ON DELETE CASCADE
-);
\ No newline at end of file
+);
+CREATE INDEX IF NOT EXISTS events_user_id_event_id_idx ON events (user_id, event_id);
+
+MERGE INTO genres (genre_id, genre_name) KEY (genre_id)
+VALUES (1, 'Комедия'), (2, 'Драма'), (3, 'Мультфильм'), (4, 'Триллер'), (5, 'Документальный'), (6, 'Боевик');
+MERGE INTO mpa (id, mpa_name) KEY (id) VALUES (1, 'G'), (2, 'PG'), (3, 'PG-13'), (4, 'R'), (5, 'NC-17');
+ALTER TABLE genres ALTER COLUMN genre_id RESTART WITH 7;
+ALTER TABLE mpa ALTER COLUMN id RESTART WITH 6;
@@ -0,0 +1,31 @@
+-- duplicates left by the check-then-insert writes are dropped before the unique constraints go in
+DELETE FROM likes_film AS a WHERE EXISTS (SELECT 1 FROM likes_film AS b
+    WHERE b.film_id = a.film_id AND b.user_id = a.user_id AND b.id < a.id);
+DELETE FROM users_friendship AS a WHERE EXISTS (SELECT 1 FROM users_friendship AS b
+    WHERE b.user1_id = a.user1_id AND b.user2_id = a.user2_id AND b.id < a.id);
+DELETE FROM films_genres AS a WHERE EXISTS (SELECT 1 FROM films_genres AS b
+    WHERE b.film_id = a.film_id AND b.genre_id = a.genre_id AND b.id < a.id);
+DELETE FROM films_directors AS a WHERE EXISTS (SELECT 1 FROM films_directors AS b
+    WHERE b.film_id = a.film_id AND b.director_id = a.director_id AND b._ROWID_ < a._ROWID_);
+DELETE FROM likes_review AS a WHERE EXISTS (SELECT 1 FROM likes_review AS b
+    WHERE b.review_id = a.review_id AND b.user_id = a.user_id AND b._ROWID_ < a._ROWID_);
+
+-- film hydration by id, like checks and removal; common films use likes_film_user_id_film_id_idx
+ALTER TABLE likes_film ADD CONSTRAINT likes_film_film_id_user_id_uq UNIQUE (film_id, user_id);
+
+-- friend lists, friendship MERGE and the friendship graph lookups
+DROP INDEX IF EXISTS users_friendship_user1_id_user2_id_idx;
+ALTER TABLE users_friendship ADD CONSTRAINT users_friendship_user1_id_user2_id_uq UNIQUE (user1_id, user2_id);
+
+-- film hydration by id
+ALTER TABLE films_genres ADD CONSTRAINT films_genres_film_id_genre_id_uq UNIQUE (film_id, genre_id);
+ALTER TABLE films_directors ADD CONSTRAINT films_directors_film_id_director_id_uq UNIQUE (film_id, director_id);
+-- films of a director
+CREATE INDEX IF NOT EXISTS films_directors_director_id_film_id_idx ON films_directors (director_id, film_id);
+
+-- reviews of a film and of all films, most useful first
+CREATE INDEX IF NOT EXISTS reviews_film_id_useful_idx ON reviews (film_id, useful DESC, id);
+CREATE INDEX IF NOT EXISTS reviews_useful_idx ON reviews (useful DESC, id);
+
+-- one grade per user and review; also serves the useful sum of a review
+ALTER TABLE likes_review ADD CONSTRAINT likes_review_review_id_user_id_uq UNIQUE (review_id, user_id);
@@ -6,8 +6,12 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.server.ResponseStatusException;
+import ru.yandex.practicum.filmorate.dao.FilmCache;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.Director;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.User;
@@ -18,11 +22,13 @@ import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
+import java.io.IOException;
 import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -45,6 +51,12 @@ class FilmDaoTests {
     @Autowired
     private DirectorStorage directorStorage;
 
+    @Autowired
+    private FilmCache filmCache;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     public void testFindFilmById() {
         addFilm(1);
@@ -53,6 +65,31 @@ class FilmDaoTests {
                 -> assertThat(filmFromStorage).hasFieldOrPropertyWithValue("description", "testDescr1"));
     }
 
+    @Test
+    public void getFilmByIdShouldBeCachedUntilFilmChanges() {
+        addFilm(1);
+        addUser(1);
+        long misses = filmCache.getMisses();
+        long hits = filmCache.getHits();
+
+        Film film = filmService.getFilmById(1);
+        film.addLike(1);
+        Film cached = filmService.getFilmById(1);
+        Assertions.assertNotSame(film, cached);
+        Assertions.assertTrue(cached.getLikes().isEmpty());
+        Assertions.assertEquals(misses + 1, filmCache.getMisses());
+        Assertions.assertEquals(hits + 1, filmCache.getHits());
+
+        filmStorage.addLike(1, 1);
+        Film liked = filmService.getFilmById(1);
+        Assertions.assertNotSame(film, liked);
+        Assertions.assertEquals(Set.of(1), liked.getLikes());
+        Assertions.assertEquals(misses + 2, filmCache.getMisses());
+
+        filmStorage.deleteFilm(1);
+        Assertions.assertThrows(NotFoundException.class, () -> filmService.getFilmById(1));
+    }
+
     @Test
     public void testGtMostPopularFilmsIntersectionWithFriend() {
         Film film1 = addFilm(1);
@@ -82,6 +119,35 @@ class FilmDaoTests {
         Assertions.assertEquals(filmService.getMostPopularFilmsIntersectionWithFriend(1, 2), resultListFilms);
     }
 
+    @Test
+    public void commonFilmsShouldBeJoinedInTheDatabase() {
+        for (int i = 1; i <= 30; i++) {
+            addFilm(1 + (i - 1) % 5);
+        }
+        addUser(1);
+        addUser(2);
+        addUser(3);
+        for (int filmId = 1; filmId <= 30; filmId++) {
+            filmStorage.addLike(filmId, 1);
+            if (filmId % 2 == 0) {
+                filmStorage.addLike(filmId, 2);
+            }
+            if (filmId % 3 == 0) {
+                filmStorage.addLike(filmId, 3);
+            }
+        }
+
+        List<Film> common = filmService.getMostPopularFilmsIntersectionWithFriend(2, 1);
+        Assertions.assertEquals(List.of(6, 12, 18, 24, 30, 2, 4, 8, 10, 14, 16, 20, 22, 26, 28),
+                common.stream().map(Film::getId).collect(Collectors.toList()));
+        Assertions.assertTrue(filmService.getMostPopularFilmsIntersectionWithFriend(2, 42).isEmpty());
+
+        String plan = jdbcTemplate.queryForObject("EXPLAIN SELECT f.id FROM likes_film AS l " +
+                "JOIN likes_film AS o ON o.user_id = 2 AND o.film_id = l.film_id " +
+                "JOIN films AS f ON f.id = l.film_id WHERE l.user_id = 1", String.class);
+        Assertions.assertTrue(plan.toUpperCase().contains("LIKES_FILM_USER_ID_FILM_ID_IDX"), plan);
+    }
+
     @Test
     public void getFilmByDirectorShouldBeSorted(){
 
@@ -203,6 +269,77 @@ class FilmDaoTests {
         Assertions.assertEquals(0, filmStorage.getAllFilms().size());
     }
 
+    @Test
+    public void getFilmsPageTest() {
+        addFilm(1);
+        addFilm(2);
+        addFilm(3);
+        filmStorage.deleteFilm(2);
+        CursorPage<Film> firstPage = filmStorage.getFilmsPage(0, 1);
+        Assertions.assertEquals(1, firstPage.getItems().size());
+        Assertions.assertEquals("testTitle1", firstPage.getItems().get(0).getName());
+        Assertions.assertEquals(1, firstPage.getNextCursor());
+
+        CursorPage<Film> lastPage = filmStorage.getFilmsPage(firstPage.getNextCursor(), 2);
+        Assertions.assertEquals(1, lastPage.getItems().size());
+        Assertions.assertEquals(3, lastPage.getItems().get(0).getId());
+        Assertions.assertNull(lastPage.getNextCursor());
+        Assertions.assertThrows(ResponseStatusException.class, () -> filmService.getFilmsPage(0, 0));
+    }
+
+    @Test
+    public void exportShouldStreamSameFilmsAsGetAll() throws Exception {
+        addUser(1);
+        addUser(2);
+        Director director = addDirector(1);
+        Film film1 = addFilm(1);
+        film1.setDirectors(Set.of(director));
+        filmStorage.updateFilm(film1);
+        addFilm(2);
+        addFilm(3);
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(3, 1);
+        filmStorage.addLike(3, 2);
+        filmStorage.deleteFilm(2);
+
+        List<Film> exported = new ArrayList<>();
+        filmStorage.streamAllFilms(exported::add);
+        Assertions.assertEquals(filmStorage.getAllFilms(), exported);
+        Assertions.assertEquals(Set.of(director), exported.get(0).getDirectors());
+        Assertions.assertEquals(Set.of(1, 2), exported.get(1).getLikes());
+
+        Assertions.assertThrows(IOException.class, () -> filmStorage.streamAllFilms(film -> {
+            throw new IOException("client gone");
+        }));
+    }
+
+    @Test
+    public void likeCountShouldFollowLikes() {
+        addFilm(1);
+        addFilm(2);
+        addUser(1);
+        addUser(2);
+        filmStorage.addLike(2, 1);
+        filmStorage.addLike(2, 1);
+        Assertions.assertEquals(1, likeCount(2));
+        filmStorage.addLike(2, 2);
+        filmStorage.addLike(1, 2);
+        Assertions.assertEquals(2, likeCount(2));
+        Assertions.assertEquals(List.of(2, 1), List.of(filmService.topNFilms(2).get(0).getId(),
+                filmService.topNFilms(2).get(1).getId()));
+
+        filmStorage.removeLike(2, 1);
+        filmStorage.removeLike(2, 1);
+        Assertions.assertEquals(1, likeCount(2));
+        userStorage.deleteUser(2);
+        Assertions.assertEquals(0, likeCount(1));
+        Assertions.assertEquals(0, likeCount(2));
+    }
+
+    private int likeCount(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE id = ?", Integer.class, filmId);
+    }
+
     @Test
     public void getPopularFilms() {
         addFilm(1);
@@ -0,0 +1,151 @@
+package ru.yandex.practicum.filmorate;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.LikeChange;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.service.FilmService;
+import ru.yandex.practicum.filmorate.service.LikeWriteBehindQueue;
+import ru.yandex.practicum.filmorate.service.UserService;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+@SpringBootTest(properties = {
+        "filmorate.likes.write-behind.enabled=true",
+        "filmorate.likes.write-behind.flush-interval=1h",
+        "filmorate.likes.write-behind.capacity=3",
+        "filmorate.likes.write-behind.offer-timeout=10ms"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class LikeWriteBehindTests {
+
+    private final LikeWriteBehindQueue likeQueue;
+    private final FilmService filmService;
+    private final UserService userService;
+    private final FilmStorage filmStorage;
+    private final UserStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void likesShouldBeCoalescedAndFlushedInOneBatch() {
+        seed();
+        filmService.like(1, 1, userService, true);
+        filmService.like(1, 1, userService, false);
+        filmService.like(1, 1, userService, true);
+        filmService.like(1, 2, userService, true);
+        filmService.like(2, 1, userService, false);
+        Assertions.assertEquals(3, likeQueue.size());
+        Assertions.assertEquals(0, likes(1));
+        Assertions.assertEquals(Set.of(), filmService.getFilmById(1).getLikes());
+
+        likeQueue.flush();
+        Assertions.assertEquals(0, likeQueue.size());
+        Assertions.assertEquals(2, likes(1));
+        Assertions.assertEquals(Set.of(1, 2), filmStorage.getFilmById(1).get().getLikes());
+        Assertions.assertEquals(2, filmStorage.topNFilms(1).get(0).getLikes().size());
+    }
+
+    @Test
+    public void fullQueueShouldRefuseNewPairsOnly() {
+        seed();
+        Assertions.assertTrue(likeQueue.offer(new LikeChange(1, 1, true)));
+        Assertions.assertTrue(likeQueue.offer(new LikeChange(1, 2, true)));
+        Assertions.assertTrue(likeQueue.offer(new LikeChange(2, 1, true)));
+        Assertions.assertFalse(likeQueue.offer(new LikeChange(2, 2, true)));
+        Assertions.assertTrue(likeQueue.offer(new LikeChange(2, 1, false)));
+
+        likeQueue.flush();
+        Assertions.assertTrue(likeQueue.offer(new LikeChange(2, 2, true)));
+    }
+
+    @Test
+    public void journaledLikesShouldBeReplayedAfterCrash() throws IOException {
+        seed();
+        Path journalDir = Files.createTempDirectory("likes-journal");
+        LikeWriteBehindQueue crashed = queue("journal", journalDir);
+        crashed.start();
+        crashed.offer(new LikeChange(1, 1, true));
+        crashed.offer(new LikeChange(2, 2, true));
+        crashed.offer(new LikeChange(2, 1, true));
+        crashed.offer(new LikeChange(2, 1, false));
+        // no flush and no stop: the process dies with the changes only in the journal
+
+        LikeWriteBehindQueue restarted = queue("journal", journalDir);
+        restarted.start();
+        restarted.stop();
+        Assertions.assertEquals(1, likes(1));
+        Assertions.assertEquals(1, likes(2));
+        try (var files = Files.list(journalDir)) {
+            Assertions.assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    public void concurrentlyFsyncedLikesShouldBeReplayedAfterCrash() throws Exception {
+        seed();
+        Path journalDir = Files.createTempDirectory("likes-journal");
+        LikeWriteBehindQueue crashed = queue("fsync", journalDir);
+        crashed.start();
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int filmId = 1 + thread % 2;
+            int userId = 1 + thread / 2;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < 50; i++) {
+                    Assertions.assertTrue(crashed.offer(new LikeChange(filmId, userId, i % 2 == 1)));
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        LikeWriteBehindQueue restarted = queue("fsync", journalDir);
+        restarted.start();
+        restarted.stop();
+        Assertions.assertEquals(2, likes(1));
+        Assertions.assertEquals(2, likes(2));
+    }
+
+    private LikeWriteBehindQueue queue(String durability, Path journalDir) {
+        return new LikeWriteBehindQueue(filmStorage, new SimpleMeterRegistry(), true, Duration.ofHours(1),
+                1000, 100, Duration.ofMillis(10), durability, journalDir);
+    }
+
+    private int likes(int filmId) {
+        return jdbcTemplate.queryForObject("SELECT like_count FROM films WHERE id = ?", Integer.class, filmId);
+    }
+
+    private void seed() {
+        for (int i = 1; i <= 2; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(2000, 1, 1), 100);
+            film.setMpa(new Mpa("G", 1));
+            filmStorage.addFilm(film);
+            userStorage.addUser(new User("user" + i + "@mail.ru", "user" + i, "user", LocalDate.of(1990, 1, 1)));
+        }
+    }
+}
@@ -6,14 +6,24 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.CursorPage;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 
@@ -28,6 +38,9 @@ class UserDaoTests {
     @Autowired
     private UserStorage userStorage;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @Test
     public void testFindUserById() {
         addUser(1);
@@ -66,17 +79,16 @@ class UserDaoTests {
 
     @Test
     public void testUsersFriendshipAddAndRemoveAndMutually() {
-        User user1 = addUser(1);
-        User user2 = addUser(2);
-        userStorage.updateFriendship(user1, user2, true);
+        addUser(1);
+        addUser(2);
+        userStorage.addFriend(1, 2);
+        userStorage.addFriend(2, 1);
         Optional<User> userOptional = userStorage.findUserById(1);
         Assertions.assertNotEquals(userOptional, Optional.empty());
         Assertions.assertEquals(userOptional.get().getFriends().size(), 1);
         Assertions.assertEquals(userOptional.get().getFriends().get(2), Boolean.TRUE);
 
-        user2 = userStorage.findUserById(2).get();
-        user1 = userStorage.findUserById(1).get();
-        userStorage.removeFriends(user2, user1);
+        userStorage.removeFriend(2, 1);
 
         Optional<User> userOptional2 = userStorage.findUserById(1);
         Assertions.assertNotEquals(userOptional2, Optional.empty());
@@ -97,6 +109,103 @@ class UserDaoTests {
         Assertions.assertEquals(userList.size(), 2);
     }
 
+    @Test
+    public void testGetUsersPage() {
+        addUser(1);
+        addUser(2);
+        addUser(3);
+        CursorPage<User> firstPage = userStorage.getUsersPage(0, 2);
+        Assertions.assertEquals(List.of(1, 2), List.of(firstPage.getItems().get(0).getId(), firstPage.getItems().get(1).getId()));
+        Assertions.assertEquals(2, firstPage.getNextCursor());
+
+        CursorPage<User> lastPage = userStorage.getUsersPage(firstPage.getNextCursor(), 2);
+        Assertions.assertEquals(1, lastPage.getItems().size());
+        Assertions.assertEquals(3, lastPage.getItems().get(0).getId());
+        Assertions.assertNull(lastPage.getNextCursor());
+    }
+
+    @Test
+    public void friendsShouldBeLoadedInBulk() {
+        for (int i = 1; i <= 5; i++) {
+            addUser(i);
+        }
+        userStorage.addFriend(1, 3);
+        userStorage.addFriend(1, 4);
+        userStorage.addFriend(2, 4);
+        userStorage.addFriend(2, 5);
+        userStorage.addFriend(4, 3);
+        userStorage.addFriend(3, 4);
+
+        List<User> friends = userStorage.findFriends(1, true);
+        Assertions.assertEquals(List.of(3, 4), friends.stream().map(User::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(Map.of(3, true), friends.get(1).getFriends());
+        Assertions.assertTrue(userStorage.findFriends(1, false).get(1).getFriends().isEmpty());
+
+        List<User> common = userStorage.findCommonFriends(1, 2, true);
+        Assertions.assertEquals(List.of(4), common.stream().map(User::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(Map.of(3, true), common.get(0).getFriends());
+        Assertions.assertTrue(userStorage.findCommonFriends(1, 5, true).isEmpty());
+
+        List<User> byIds = userStorage.findUsersByIds(List.of(5, 42, 2), true);
+        Assertions.assertEquals(List.of(2, 5), byIds.stream().map(User::getId).collect(Collectors.toList()));
+        Assertions.assertEquals(Map.of(4, false, 5, false), byIds.get(0).getFriends());
+    }
+
+    @Test
+    public void friendshipWritesShouldKeepMutualFlagsOnBothRows() {
+        addUser(1);
+        addUser(2);
+        userStorage.addFriend(1, 2);
+        Assertions.assertEquals(Map.of(2, false), userStorage.findUserById(1).get().getFriends());
+        Assertions.assertEquals(Map.of(), userStorage.findUserById(2).get().getFriends());
+
+        userStorage.addFriend(2, 1);
+        userStorage.addFriend(2, 1);
+        Assertions.assertEquals(Map.of(2, true), userStorage.findUserById(1).get().getFriends());
+        Assertions.assertEquals(Map.of(1, true), userStorage.findUserById(2).get().getFriends());
+        Assertions.assertEquals(2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_friendship " +
+                "WHERE mutually", Integer.class));
+
+        userStorage.removeFriend(1, 2);
+        Assertions.assertEquals(Map.of(), userStorage.findUserById(1).get().getFriends());
+        Assertions.assertEquals(Map.of(1, false), userStorage.findUserById(2).get().getFriends());
+
+        Assertions.assertThrows(NotFoundException.class, () -> userStorage.addFriend(1, 42));
+        Assertions.assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_friendship",
+                Integer.class));
+    }
+
+    @Test
+    public void concurrentOppositeFriendRequestsShouldEndMutual() throws Exception {
+        int pairs = 20;
+        for (int i = 1; i <= pairs * 2; i++) {
+            addUser(i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 1; i <= pairs * 2; i += 2) {
+                int user1 = i;
+                int user2 = i + 1;
+                futures.add(executor.submit(() -> userStorage.addFriend(user1, user2)));
+                futures.add(executor.submit(() -> userStorage.addFriend(user2, user1)));
+            }
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        Assertions.assertEquals(pairs * 2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_friendship " +
+                "WHERE mutually", Integer.class));
+        Assertions.assertEquals(pairs * 2, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_friendship",
+                Integer.class));
+        for (int i = 1; i <= pairs * 2; i += 2) {
+            Assertions.assertEquals(Map.of(i + 1, true), userStorage.findUserById(i).get().getFriends());
+            Assertions.assertEquals(Map.of(i, true), userStorage.findUserById(i + 1).get().getFriends());
+        }
+    }
+
     @Test
     public void deleteUserTest() {
         addUser(1);
@@ -0,0 +1,52 @@
+package ru.yandex.practicum.filmorate.controller;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.test.web.servlet.MockMvc;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.EventService;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+
+import static org.hamcrest.Matchers.hasSize;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.*;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@AutoConfigureMockMvc
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class EventControllerTest {
+
+    private final MockMvc mockMvc;
+    private final EventService eventService;
+    private final UserStorage userStorage;
+
+    @Test
+    void feedWithoutParametersShouldReturnWholeFeed() throws Exception {
+        int userId = userStorage.addUser(new User("user@mail.ru", "user", "user", LocalDate.of(1990, 1, 1))).getId();
+        Event last = null;
+        for (int entityId = 1; entityId <= EventService.DEFAULT_PAGE_SIZE + 1; entityId++) {
+            last = eventService.addAddedLikeEvent(userId, entityId);
+        }
+
+        mockMvc.perform(get("/users/{id}/feed", userId))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(EventService.DEFAULT_PAGE_SIZE + 1)))
+                .andExpect(jsonPath("$[0].entityId").value(1))
+                .andExpect(jsonPath("$[100].entityId").value(EventService.DEFAULT_PAGE_SIZE + 1))
+                .andExpect(header().string("X-Next-Cursor", String.valueOf(last.getId())));
+
+        mockMvc.perform(get("/users/{id}/feed", userId).param("sinceEventId", "0"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(EventService.DEFAULT_PAGE_SIZE)));
+    }
+}
@@ -0,0 +1,159 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.CursorPage;
+import ru.yandex.practicum.filmorate.model.Event;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.EventType;
+import ru.yandex.practicum.filmorate.model.enums.OperationType;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static ru.yandex.practicum.filmorate.model.enums.EventType.*;
+import static ru.yandex.practicum.filmorate.model.enums.OperationType.*;
+
+@SpringBootTest(properties = "filmorate.events.flush-interval=1h")
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class EventBatchWriterTest {
+
+    private final EventDbStorage eventStorage;
+    private final UserDbStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    void pendingEventsShouldBeVisibleInFeed() {
+        int userId = addUser(1).getId();
+        eventStorage.add(makeEvent(userId, 1, LIKE, ADD));
+        eventStorage.add(makeEvent(userId, 2, FRIEND, ADD));
+
+        assertThat(storedEvents()).isZero();
+        assertThat(eventStorage.findByUserId(userId)).extracting(Event::getEntityId).containsExactly(1, 2);
+
+        assertThat(eventStorage.flush()).isEqualTo(2);
+        eventStorage.add(makeEvent(userId, 3, REVIEW, ADD));
+
+        assertThat(storedEvents()).isEqualTo(2);
+        assertThat(eventStorage.pendingCount()).isEqualTo(1);
+        assertThat(eventStorage.findByUserId(userId)).extracting(Event::getEntityId).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void feedShouldPageFromSinceCursor() {
+        int userId = addUser(1).getId();
+        int otherId = addUser(2).getId();
+        for (int entityId = 1; entityId <= 3; entityId++) {
+            eventStorage.add(makeEvent(userId, entityId, LIKE, ADD));
+            eventStorage.add(makeEvent(otherId, entityId, LIKE, ADD));
+        }
+        eventStorage.flush();
+        eventStorage.add(makeEvent(userId, 4, LIKE, ADD));
+        eventStorage.add(makeEvent(userId, 5, LIKE, ADD));
+
+        CursorPage<Event> page = eventStorage.findByUserId(userId, 0, 2);
+        assertThat(page.getItems()).extracting(Event::getEntityId).containsExactly(1, 2);
+        page = eventStorage.findByUserId(userId, page.getNextCursor(), 2);
+        assertThat(page.getItems()).extracting(Event::getEntityId).containsExactly(3, 4);
+        page = eventStorage.findByUserId(userId, page.getNextCursor(), 2);
+        assertThat(page.getItems()).extracting(Event::getEntityId).containsExactly(5);
+        int cursor = page.getNextCursor();
+
+        page = eventStorage.findByUserId(userId, cursor, 2);
+        assertThat(page.getItems()).isEmpty();
+        assertThat(page.getNextCursor()).isEqualTo(cursor);
+
+        eventStorage.add(makeEvent(userId, 6, REVIEW, ADD));
+        assertThat(eventStorage.findByUserId(userId, cursor, 2).getItems())
+                .extracting(Event::getEntityId).containsExactly(6);
+    }
+
+    @Test
+    void feedQueryShouldUseUserEventIndex() {
+        String plan = jdbcTemplate.queryForObject(
+                "EXPLAIN SELECT * FROM events WHERE user_id = 1 AND event_id > 0 ORDER BY event_id LIMIT 10",
+                String.class);
+        assertThat(plan).containsIgnoringCase("EVENTS_USER_ID_EVENT_ID_IDX");
+    }
+
+    @Test
+    void eventsOfDeletedUserShouldBeDropped() {
+        int kept = addUser(1).getId();
+        int deleted = addUser(2).getId();
+        eventStorage.add(makeEvent(kept, 1, LIKE, ADD));
+        eventStorage.add(makeEvent(deleted, 1, LIKE, ADD));
+        userStorage.deleteUser(deleted);
+
+        eventStorage.flush();
+
+        assertThat(storedEvents()).isEqualTo(1);
+        assertThat(eventStorage.pendingCount()).isZero();
+        assertThat(eventStorage.findByUserId(kept)).hasSize(1);
+    }
+
+    @Test
+    void concurrentEventsShouldKeepPerUserOrder() throws Exception {
+        int users = 4;
+        int perUser = 250;
+        for (int i = 1; i <= users; i++) {
+            addUser(i);
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(users);
+        List<Future<?>> producers = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            int userId = i;
+            producers.add(executor.submit(() -> {
+                for (int entityId = 1; entityId <= perUser; entityId++) {
+                    eventStorage.add(makeEvent(userId, entityId, LIKE, ADD));
+                }
+            }));
+        }
+        for (Future<?> producer : producers) {
+            producer.get();
+        }
+        executor.shutdown();
+        eventStorage.flush();
+
+        assertThat(storedEvents()).isEqualTo(users * perUser);
+        for (int userId = 1; userId <= users; userId++) {
+            List<Integer> stored = jdbcTemplate.queryForList(
+                    "SELECT entity_id FROM events WHERE user_id = ? ORDER BY event_id", Integer.class, userId);
+            assertThat(stored).isSorted().hasSize(perUser);
+            assertThat(eventStorage.findByUserId(userId).stream().map(Event::getEntityId)
+                    .collect(Collectors.toList())).isEqualTo(stored);
+        }
+    }
+
+    private int storedEvents() {
+        return jdbcTemplate.queryForObject("SELECT COUNT(*) FROM events", Integer.class);
+    }
+
+    private Event makeEvent(int userId, int entityId, EventType eT, OperationType oT) {
+        return new Event()
+                .setTimestamp(Instant.now().toEpochMilli())
+                .setEventType(eT)
+                .setOperation(oT)
+                .setUserId(userId)
+                .setEntityId(entityId);
+    }
+
+    private User addUser(int i) {
+        User user = new User("test@test" + i + ".com", "login" + i, "name" + i, LocalDate.ofEpochDay(1));
+        userStorage.addUser(user);
+        return user;
+    }
+}
@@ -0,0 +1,148 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.config.BeanPostProcessor;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.storage.director.DirectorStorage;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FilmHydratorTest {
+
+    private static final AtomicInteger STATEMENTS = new AtomicInteger();
+
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final DirectorStorage directorStorage;
+    private final FilmCache filmCache;
+
+    @Test
+    public void statementCountShouldNotDependOnCatalogSize() {
+        seed(1);
+        int getAllSmall = countStatements(filmStorage::getAllFilms);
+        int directorSmall = countStatements(() -> filmStorage.getFilmByDirector(1, "likes"));
+
+        seed(20);
+        assertThat(countStatements(filmStorage::getAllFilms)).isEqualTo(getAllSmall).isEqualTo(4);
+        // popular films are ranked in memory; only films missing from the film cache are hydrated
+        assertThat(countStatements(() -> filmStorage.topNFilms(10))).isLessThanOrEqualTo(4);
+        assertThat(countStatements(() -> filmStorage.topNFilms(10))).isZero();
+        // search is answered by the in-memory search index, hydrating only cache misses
+        assertThat(countStatements(() -> filmStorage.searchFilmsByString("film", "both"))).isLessThanOrEqualTo(4);
+        assertThat(countStatements(() -> filmStorage.searchFilmsByString("film", "both"))).isZero();
+        assertThat(countStatements(() -> filmStorage.getFilmByDirector(1, "likes")))
+                .isEqualTo(directorSmall).isEqualTo(5);
+        // common films are one indexed join, hydrating only cache misses
+        assertThat(countStatements(() -> filmStorage.getCommonFilms(1, 2))).isLessThanOrEqualTo(5);
+        assertThat(countStatements(() -> filmStorage.getCommonFilms(1, 2))).isEqualTo(1);
+        filmCache.invalidateAll();
+        assertThat(countStatements(() -> filmStorage.getFilmById(1))).isEqualTo(4);
+    }
+
+    @Test
+    public void shouldHydrateAllAttributes() {
+        seed(2);
+
+        Film film = filmStorage.getFilmById(2).orElseThrow();
+        assertThat(film.getMpa()).isEqualTo(new Mpa("PG", 2));
+        assertThat(film.getGenres()).extracting(Genre::getId).containsExactly(2, 1);
+        assertThat(film.getDirectors()).containsExactly(new Director(1, "director"));
+        assertThat(film.getLikes()).containsExactlyInAnyOrder(1, 2);
+
+        assertThat(filmStorage.getAllFilms()).extracting(Film::getId).containsExactly(1, 2);
+    }
+
+    @Test
+    public void listByIdsShouldKeepRequestedOrderAndSkipUnknownIds() {
+        seed(3);
+
+        List<Film> films = filmStorage.getListFilmsByListId(List.of(3, 100, 1, 2));
+        assertThat(films).extracting(Film::getId).containsExactly(3, 1, 2);
+        assertThat(films).extracting(Film::howManyLikes).containsExactly(3, 1, 2);
+        assertThat(countStatements(() -> filmStorage.getListFilmsByListId(List.of(3, 1, 2)))).isEqualTo(4);
+    }
+
+    private int countStatements(Supplier<?> call) {
+        STATEMENTS.set(0);
+        call.get();
+        return STATEMENTS.get();
+    }
+
+    private void seed(int filmsCount) {
+        if (directorStorage.getAll().isEmpty()) {
+            directorStorage.add(new Director(0, "director"));
+        }
+        for (int i = 0; i < filmsCount; i++) {
+            User user = userStorage.addUser(new User("mail@mail.ru", "login", "name", LocalDate.of(2000, 1, 1)));
+            Film film = new Film("film" + i, "description", LocalDate.of(2000, 1, 1), 100);
+            film.setMpa(new Mpa("PG", 2));
+            film.setGenres(new ArrayList<>(List.of(new Genre("Драма", 2), new Genre("Комедия", 1))));
+            film.setDirectors(Set.of(new Director(1, "director")));
+            filmStorage.addFilm(film);
+            for (int userId = 1; userId <= user.getId(); userId++) {
+                filmStorage.addLike(film.getId(), userId);
+            }
+        }
+    }
+
+    @TestConfiguration
+    static class StatementCounterConfig {
+
+        @Bean
+        public static BeanPostProcessor statementCountingDataSource() {
+            return new BeanPostProcessor() {
+                @Override
+                public Object postProcessAfterInitialization(Object bean, String beanName) {
+                    if (bean instanceof DataSource) {
+                        return countingProxy(DataSource.class, bean);
+                    }
+                    return bean;
+                }
+            };
+        }
+
+        private static <T> T countingProxy(Class<T> type, Object target) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) -> {
+                String name = method.getName();
+                if (name.equals("prepareStatement") || name.equals("createStatement") || name.equals("prepareCall")) {
+                    STATEMENTS.incrementAndGet();
+                }
+                try {
+                    Object result = method.invoke(target, args);
+                    if (name.equals("getConnection")) {
+                        return countingProxy(Connection.class, result);
+                    }
+                    return result;
+                } catch (InvocationTargetException e) {
+                    throw e.getCause();
+                }
+            }));
+        }
+    }
+}
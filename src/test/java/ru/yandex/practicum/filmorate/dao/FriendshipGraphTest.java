@@ -0,0 +1,177 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import org.springframework.web.server.ResponseStatusException;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.service.UserService;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class FriendshipGraphTest {
+
+    private final FriendshipGraph friendshipGraph;
+    private final UserDbStorage userStorage;
+    private final UserService userService;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldMatchReferenceModelAcrossCompactions() {
+        // a tiny buffer folds the changed rows back into the compact arrays many times
+        FriendshipGraph graph = new FriendshipGraph(null, 8);
+        Map<Integer, Map<Integer, Boolean>> model = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 2000; i++) {
+            int user1 = 1 + random.nextInt(40);
+            int user2 = 1 + random.nextInt(40);
+            int action = random.nextInt(10);
+            if (action < 9 && user1 != user2) {
+                Map<Integer, Boolean> forward = model.computeIfAbsent(user1, id -> new HashMap<>());
+                Map<Integer, Boolean> backward = model.computeIfAbsent(user2, id -> new HashMap<>());
+                if (action < 6) {
+                    forward.put(user2, backward.containsKey(user1));
+                } else {
+                    forward.remove(user2);
+                }
+                backward.computeIfPresent(user1, (id, mutually) -> forward.containsKey(user2));
+                graph.setEdges(user1, user2, forward.get(user2), backward.get(user1));
+            } else if (action == 9) {
+                graph.removeUser(user1);
+                model.remove(user1);
+                model.values().forEach(friends -> friends.remove(user1));
+            }
+        }
+        for (int user = 1; user <= 40; user++) {
+            Map<Integer, Boolean> expected = model.getOrDefault(user, Map.of());
+            assertThat(graph.friendMap(user)).as("user %d", user).isEqualTo(expected);
+            assertThat(graph.friends(user)).containsExactly(expected.keySet().stream().sorted()
+                    .mapToInt(Integer::intValue).toArray());
+            assertThat(graph.suggestions(user, 5)).containsExactly(suggestions(model, user, 5));
+            int other = 1 + (user * 7) % 40;
+            Set<Integer> common = new TreeSet<>(expected.keySet());
+            common.retainAll(model.getOrDefault(other, Map.of()).keySet());
+            assertThat(graph.commonFriends(user, other))
+                    .containsExactly(common.stream().mapToInt(Integer::intValue).toArray());
+        }
+    }
+
+    @Test
+    public void storageShouldAnswerFromTheGraph() {
+        IntStream.rangeClosed(1, 6).forEach(this::addUser);
+        // 1 -> 2, 3; 2 -> 4, 5; 3 -> 4; 4 -> 6
+        link(1, 2);
+        link(1, 3);
+        link(2, 4);
+        link(2, 5);
+        link(3, 4);
+        link(4, 6);
+
+        assertThat(ids(userStorage.findFriends(1, true))).containsExactly(2, 3);
+        assertThat(userStorage.findFriends(1, true).get(0).getFriends()).containsOnlyKeys(4, 5);
+        assertThat(ids(userStorage.findCommonFriends(2, 3, false))).containsExactly(4);
+        // 4 is reached through both 2 and 3
+        assertThat(ids(userService.getFriendSuggestions(1, 10))).containsExactly(4, 5);
+        assertThat(ids(userService.getFriendSuggestions(1, 1))).containsExactly(4);
+        assertThatThrownBy(() -> userService.getFriendSuggestions(1, 0)).isInstanceOf(ResponseStatusException.class);
+
+        userStorage.deleteUser(4);
+        assertThat(ids(userService.getFriendSuggestions(1, 10))).containsExactly(5);
+
+        Map<Integer, Map<Integer, Boolean>> incremental = new HashMap<>();
+        for (int user = 1; user <= 6; user++) {
+            incremental.put(user, friendshipGraph.friendMap(user));
+        }
+        friendshipGraph.reload();
+        for (int user = 1; user <= 6; user++) {
+            assertThat(friendshipGraph.friendMap(user)).isEqualTo(incremental.get(user));
+        }
+    }
+
+    @Test
+    public void concurrentChangesOfOnePairShouldEndAsInTheTable() throws Exception {
+        IntStream.rangeClosed(1, 2).forEach(this::addUser);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int thread = 0; thread < 4; thread++) {
+            int user = 1 + thread % 2;
+            int friend = 3 - user;
+            tasks.add(executor.submit(() -> {
+                for (int i = 0; i < 200; i++) {
+                    userStorage.addFriend(user, friend);
+                    userStorage.removeFriend(user, friend);
+                    if (i % 3 == 0) {
+                        userStorage.addFriend(user, friend);
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        for (int user = 1; user <= 2; user++) {
+            Map<Integer, Boolean> stored = new HashMap<>();
+            jdbcTemplate.query("SELECT user2_id, mutually FROM users_friendship WHERE user1_id = ?",
+                    rs -> {
+                        stored.put(rs.getInt("user2_id"), rs.getBoolean("mutually"));
+                    }, user);
+            assertThat(friendshipGraph.friendMap(user)).isEqualTo(stored);
+        }
+    }
+
+    @Test
+    public void idsTheEncodingCannotHoldShouldBeRejected() {
+        FriendshipGraph graph = new FriendshipGraph(null, 8);
+        assertThatThrownBy(() -> graph.syncPair(1, FriendshipGraph.MAX_USER_ID + 1))
+                .isExactlyInstanceOf(IllegalStateException.class);
+    }
+
+    private static int[] suggestions(Map<Integer, Map<Integer, Boolean>> model, int user, int limit) {
+        Map<Integer, Boolean> own = model.getOrDefault(user, Map.of());
+        Map<Integer, Integer> counts = new HashMap<>();
+        for (int friend : own.keySet()) {
+            for (int next : model.getOrDefault(friend, Map.of()).keySet()) {
+                if (next != user && !own.containsKey(next)) {
+                    counts.merge(next, 1, Integer::sum);
+                }
+            }
+        }
+        return counts.entrySet().stream()
+                .sorted(Map.Entry.<Integer, Integer>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .mapToInt(Map.Entry::getKey)
+                .toArray();
+    }
+
+    private void link(int user1, int user2) {
+        userStorage.addFriend(user1, user2);
+    }
+
+    private List<Integer> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+
+    private void addUser(int i) {
+        userStorage.addUser(new User("user" + i + "@mail.com", "user" + i, "user" + i, LocalDate.of(1990, 1, 1)));
+    }
+}
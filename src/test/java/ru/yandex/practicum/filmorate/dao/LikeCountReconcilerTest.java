@@ -0,0 +1,51 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class LikeCountReconcilerTest {
+
+    private final LikeCountReconciler reconciler;
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldCorrectDriftedCounters() {
+        for (int i = 1; i <= 3; i++) {
+            Film film = new Film("film" + i, "description", LocalDate.of(2000, 1, 1), 100);
+            film.setMpa(new Mpa("G", 1));
+            filmStorage.addFilm(film);
+            userStorage.addUser(new User("user" + i + "@mail.ru", "user" + i, "user", LocalDate.of(1990, 1, 1)));
+        }
+        filmStorage.addLike(1, 1);
+        filmStorage.addLike(1, 2);
+        filmStorage.addLike(2, 3);
+        assertThat(reconciler.reconcile()).isEmpty();
+
+        jdbcTemplate.update("UPDATE films SET like_count = 5 WHERE id = 1");
+        jdbcTemplate.update("INSERT INTO likes_film (film_id, user_id) VALUES (3, 1)");
+
+        assertThat(reconciler.reconcile()).containsExactlyInAnyOrder(1, 3);
+        assertThat(jdbcTemplate.queryForList("SELECT like_count FROM films ORDER BY id", Integer.class))
+                .isEqualTo(List.of(2, 1, 1));
+        assertThat(reconciler.reconcile()).isEmpty();
+    }
+}
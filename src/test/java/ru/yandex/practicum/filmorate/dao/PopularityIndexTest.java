@@ -0,0 +1,154 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class PopularityIndexTest {
+
+    private final PopularityIndex popularityIndex;
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldRankEveryFacet() {
+        addFilm(2000, 1, 2);
+        addFilm(2000, 2);
+        addFilm(2001, 1);
+        addFilm(2001);
+        addUsers(3);
+        like(2, 1, 2, 3);
+        like(3, 1, 2);
+        like(1, 1);
+
+        assertThat(popularityIndex.top(10, null, null)).containsExactly(2, 3, 1, 4);
+        assertThat(popularityIndex.top(2, null, null)).containsExactly(2, 3);
+        assertThat(popularityIndex.top(10, 1, null)).containsExactly(3, 1);
+        assertThat(popularityIndex.top(10, 2, 2000)).containsExactly(2, 1);
+        assertThat(popularityIndex.top(10, null, 2001)).containsExactly(3, 4);
+        assertThat(popularityIndex.top(10, 3, null)).isEmpty();
+        assertThat(popularityIndex.top(0, null, null)).isEmpty();
+
+        filmStorage.removeLike(2, 1);
+        filmStorage.removeLike(2, 2);
+        Film film = filmStorage.getFilmById(1).get();
+        film.setGenres(new ArrayList<>(List.of(new Genre("genre", 3))));
+        filmStorage.updateFilm(film);
+        filmStorage.deleteFilm(4);
+
+        assertThat(popularityIndex.top(10, null, null)).containsExactly(3, 1, 2);
+        assertThat(popularityIndex.top(10, 1, null)).containsExactly(3);
+        assertThat(popularityIndex.top(10, 3, 2000)).containsExactly(1);
+
+        userStorage.deleteUser(1);
+        assertThat(popularityIndex.top(10, null, null)).containsExactly(2, 3, 1);
+        assertThat(popularityIndex.top(10, null, null)).isEqualTo(ranking());
+    }
+
+    @Test
+    public void concurrentLikesShouldMatchStoredCounters() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            addFilm(2000 + i % 3, 1 + i % 6);
+        }
+        addUsers(20);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<?>> tasks = new ArrayList<>();
+        for (int userId = 1; userId <= 20; userId++) {
+            int user = userId;
+            tasks.add(executor.submit(() -> {
+                for (int filmId = 1; filmId <= user; filmId++) {
+                    filmStorage.addLike(filmId, user);
+                    if (filmId % 3 == 0) {
+                        filmStorage.removeLike(filmId, user);
+                    }
+                }
+            }));
+        }
+        for (Future<?> task : tasks) {
+            task.get();
+        }
+        executor.shutdown();
+
+        assertThat(popularityIndex.top(20, null, null)).isEqualTo(ranking());
+        popularityIndex.reload();
+        assertThat(popularityIndex.top(20, null, null)).isEqualTo(ranking());
+    }
+
+    @Test
+    public void readersShouldNotMissFilmsWhileTheyMove() throws Exception {
+        addFilm(2000, 1);
+        addFilm(2000, 1);
+        addFilm(2000);
+        popularityIndex.addLikes(1, 1_000_000);
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<?> likes = executor.submit(() -> {
+            for (int i = 0; i < 200_000; i++) {
+                popularityIndex.addLikes(1, -1);
+            }
+        });
+        Future<?> genres = executor.submit(() -> {
+            for (int i = 0; i < 50_000; i++) {
+                popularityIndex.putFilm(2, LocalDate.of(2000, 6, 1), i % 2 == 0 ? List.of(2) : List.of(1));
+            }
+        });
+        while (!likes.isDone() || !genres.isDone()) {
+            assertThat(popularityIndex.top(10, null, null)).containsExactlyInAnyOrder(1, 2, 3);
+            List<Integer> scanned = new ArrayList<>();
+            popularityIndex.scan(scanned::add);
+            assertThat(scanned).containsExactlyInAnyOrder(1, 2, 3);
+        }
+        likes.get();
+        genres.get();
+        executor.shutdown();
+        assertThat(popularityIndex.likes(1)).isEqualTo(800_000);
+    }
+
+    private List<Integer> ranking() {
+        return jdbcTemplate.queryForList("SELECT id FROM films ORDER BY like_count DESC, id", Integer.class);
+    }
+
+    private void addFilm(int year, Integer... genreIds) {
+        Film film = new Film("film", "description", LocalDate.of(year, 6, 1), 100);
+        film.setMpa(new Mpa("G", 1));
+        List<Genre> genres = new ArrayList<>();
+        for (Integer genreId : genreIds) {
+            genres.add(new Genre("genre", genreId));
+        }
+        film.setGenres(new ArrayList<>(genres));
+        filmStorage.addFilm(film);
+    }
+
+    private void addUsers(int count) {
+        for (int i = 1; i <= count; i++) {
+            userStorage.addUser(new User("user" + i + "@mail.ru", "user" + i, "user", LocalDate.of(1990, 1, 1)));
+        }
+    }
+
+    private void like(int filmId, int... userIds) {
+        for (int userId : userIds) {
+            filmStorage.addLike(filmId, userId);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.sql.Timestamp;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class QueryPlanTest {
+
+    private static final Integer[] IDS = {1, 2};
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // the statements the DAOs run on request paths, explained with the parameters bound
+    @Test
+    public void hotQueriesShouldNotScanTables() {
+        assertNoTableScan(FilmHydrator.SQL_SELECT_FILMS_BY_IDS, (Object) IDS);
+        assertNoTableScan(FilmHydrator.SQL_SELECT_GENRES_BY_IDS, (Object) IDS);
+        assertNoTableScan(FilmHydrator.SQL_SELECT_DIRECTORS_BY_IDS, (Object) IDS);
+        assertNoTableScan(FilmHydrator.SQL_SELECT_LIKES_BY_IDS, (Object) IDS);
+
+        assertNoTableScan(FilmDbStorage.SQL_FIND_FILMS_PAGE, 0, 100);
+        assertNoTableScan(FilmDbStorage.SQL_LOCK_FILM, 1);
+        assertNoTableScan(FilmDbStorage.SQL_LOCK_FILMS, (Object) IDS);
+        assertNoTableScan(FilmDbStorage.SQL_ADD_FILM_LIKE, 1, 2);
+        assertNoTableScan(FilmDbStorage.SQL_ADD_FILM_LIKE_IF_PRESENT, 1, 2);
+        assertNoTableScan(FilmDbStorage.SQL_REMOVE_FILM_LIKE, 1, 2);
+        assertNoTableScan(FilmDbStorage.SQL_ADD_TO_LIKE_COUNT, 1, 1);
+        assertNoTableScan(FilmDbStorage.SQL_FIND_ALL_LIKED_FILMS, 1);
+        assertNoTableScan(FilmDbStorage.SQL_FIND_COMMON_FILMS, 1, 2);
+        assertNoTableScan(FilmDbStorage.SQL_FIND_FILMS_BY_DIRECTOR, 1);
+
+        assertNoTableScan(UserDbStorage.SQL_FIND_USERS_PAGE, 0, 100);
+        assertNoTableScan(UserDbStorage.SQL_FIND_USERS_BY_IDS, (Object) IDS);
+        assertNoTableScan(UserDbStorage.SQL_LOCK_USERS, 1, 2);
+        assertNoTableScan(UserDbStorage.SQL_MERGE_FRIEND, 1, 2);
+        assertNoTableScan(UserDbStorage.SQL_SET_MUTUALLY, true, 1, 2);
+        assertNoTableScan(UserDbStorage.SQL_REMOVE_FRIEND, 1, 2);
+        assertNoTableScan(UserDbStorage.SQL_FIND_USER_LIKES, 1);
+        assertNoTableScan(UserDbStorage.SQL_UNCOUNT_USER_LIKES, 1);
+        assertNoTableScan(FriendshipGraph.SQL_SELECT_PAIR, 1, 2);
+
+        assertNoTableScan(EventDbStorage.SQL_INSERT_EVENT, 1L, new Timestamp(0), "LIKE", "ADD", 1, 2);
+        assertNoTableScan(EventDbStorage.SQL_FIND_BY_USER_ID, 1, 0L, 100);
+
+        assertNoTableScan(ReviewDbStorage.SQL_MERGE_VOTE, 1, 2, 1);
+        assertNoTableScan(ReviewDbStorage.SQL_DELETE_VOTE, 1, 2, 1);
+        assertNoTableScan(ReviewDbStorage.SQL_FIND_FILM_AND_USEFUL, 1);
+        assertNoTableScan(ReviewDbStorage.SQL_ADD_USEFUL, 1, 1);
+    }
+
+    // review pages must also be read in index order rather than sorted
+    @Test
+    public void reviewPagesShouldBeReadInIndexOrder() {
+        assertIndexSorted(ReviewDbStorage.SQL_FIND_REVIEWS, 11);
+        assertIndexSorted(ReviewDbStorage.SQL_FIND_REVIEWS_AFTER, 0, 5, 11);
+        assertIndexSorted(ReviewDbStorage.SQL_FIND_FILM_REVIEWS, 1, 11);
+        assertIndexSorted(ReviewDbStorage.SQL_FIND_FILM_REVIEWS_AFTER, 1, 0, 5, 11);
+    }
+
+    @Test
+    public void idempotentWritesShouldBeBackedByUniqueConstraints() {
+        jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES ('a@a.ru', 'a', 'a', '1990-01-01')");
+        jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration) " +
+                "VALUES ('film', 'description', '2000-01-01', 100)");
+        for (int i = 0; i < 2; i++) {
+            jdbcTemplate.update("MERGE INTO likes_film (film_id, user_id) KEY (film_id, user_id) VALUES (1, 1)");
+            jdbcTemplate.update("MERGE INTO users_friendship (user1_id, user2_id, mutually) " +
+                    "KEY (user1_id, user2_id) VALUES (1, 1, FALSE)");
+        }
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM likes_film", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM users_friendship", Integer.class)).isEqualTo(1);
+        assertThat(jdbcTemplate.queryForObject("SELECT COUNT(*) FROM INFORMATION_SCHEMA.TABLE_CONSTRAINTS " +
+                "WHERE CONSTRAINT_TYPE = 'UNIQUE' AND TABLE_NAME IN " +
+                "('LIKES_FILM', 'USERS_FRIENDSHIP', 'FILMS_GENRES', 'FILMS_DIRECTORS', 'LIKES_REVIEW')", Integer.class))
+                .isEqualTo(5);
+    }
+
+    private void assertNoTableScan(String sql, Object... args) {
+        assertThat(explain(sql, args)).as(sql).doesNotContainIgnoringCase("tableScan");
+    }
+
+    private void assertIndexSorted(String sql, Object... args) {
+        assertThat(explain(sql, args)).as(sql)
+                .doesNotContainIgnoringCase("tableScan").containsIgnoringCase("index sorted");
+    }
+
+    private String explain(String sql, Object... args) {
+        return jdbcTemplate.queryForObject("EXPLAIN " + sql, String.class, args);
+    }
+}
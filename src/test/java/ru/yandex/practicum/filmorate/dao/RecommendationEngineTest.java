@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+
+import java.sql.Date;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class RecommendationEngineTest {
+
+    // the SQL the engine replaced, with the ties it left unordered broken by id
+    private static final String SQL_RECOMMENDATIONS = "WITH REQUESTED_USER_FILMS AS " +
+            "(SELECT FL.FILM_ID FROM LIKES_FILM FL WHERE FL.USER_ID = ?1), " +
+            "COMMON_FILMS AS " +
+            "(WITH NEIGHBOURS AS " +
+            "(SELECT LIKES.USER_ID FROM LIKES_FILM AS LIKES " +
+            "INNER JOIN REQUESTED_USER_FILMS ON LIKES.FILM_ID = REQUESTED_USER_FILMS.FILM_ID " +
+            "WHERE LIKES.USER_ID <> ?1) " +
+            "SELECT NEIGHBOURS_LIKES.USER_ID, " +
+            "COUNT(DISTINCT NEIGHBOURS_LIKES.FILM_ID) AS COMMON_COUNT " +
+            "FROM LIKES_FILM AS NEIGHBOURS_LIKES " +
+            "INNER JOIN NEIGHBOURS ON NEIGHBOURS.USER_ID = NEIGHBOURS_LIKES.USER_ID " +
+            "INNER JOIN REQUESTED_USER_FILMS ON NEIGHBOURS_LIKES.FILM_ID = REQUESTED_USER_FILMS.FILM_ID " +
+            "GROUP BY NEIGHBOURS_LIKES.USER_ID " +
+            "ORDER BY COUNT(DISTINCT NEIGHBOURS_LIKES.FILM_ID) DESC, NEIGHBOURS_LIKES.USER_ID " +
+            "LIMIT 5) " +
+            "SELECT SUM(COMMON_FILMS.COMMON_COUNT) AS FILM_WEIGHT, " +
+            "F_LIKES.FILM_ID FROM LIKES_FILM AS F_LIKES " +
+            "INNER JOIN COMMON_FILMS ON F_LIKES.USER_ID = COMMON_FILMS.USER_ID " +
+            "LEFT JOIN REQUESTED_USER_FILMS ON F_LIKES.FILM_ID = REQUESTED_USER_FILMS.FILM_ID " +
+            "WHERE REQUESTED_USER_FILMS.FILM_ID IS NULL " +
+            "GROUP BY F_LIKES.FILM_ID " +
+            "ORDER BY SUM(COMMON_FILMS.COMMON_COUNT) DESC, F_LIKES.FILM_ID";
+
+    private final RecommendationEngine recommendationEngine;
+    private final FilmDbStorage filmStorage;
+    private final UserDbStorage userStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldMatchSqlAndFollowChanges() {
+        Random random = new Random(42);
+        seed(60, 40, 8, random);
+        recommendationEngine.reload();
+        assertMatchesSql(60);
+
+        for (int i = 0; i < 100; i++) {
+            int filmId = 1 + random.nextInt(40);
+            int userId = 1 + random.nextInt(60);
+            if (random.nextBoolean()) {
+                filmStorage.addLike(filmId, userId);
+            } else {
+                filmStorage.removeLike(filmId, userId);
+            }
+        }
+        userStorage.deleteUser(7);
+        filmStorage.deleteFilm(3);
+        assertMatchesSql(60);
+
+        List<List<Integer>> incremental = recommendations(60);
+        recommendationEngine.reload();
+        assertThat(recommendations(60)).isEqualTo(incremental);
+    }
+
+    @Test
+    public void largeCandidateSetsShouldBeSearchedInParallel() {
+        seed(6000, 8, 4, new Random(7));
+        recommendationEngine.reload();
+        assertThat(jdbcTemplate.queryForObject("SELECT MAX(c) FROM (SELECT COUNT(DISTINCT o.user_id) AS c " +
+                "FROM likes_film AS l JOIN likes_film AS o ON l.film_id = o.film_id " +
+                "WHERE l.user_id <= 20 GROUP BY l.user_id)", Integer.class)).isGreaterThan(4096);
+        for (int userId = 1; userId <= 20; userId++) {
+            assertThat(recommendationEngine.recommend(userId)).isEqualTo(sql(userId));
+        }
+    }
+
+    @Test
+    public void storageShouldServeEngineResults() {
+        seed(10, 10, 4, new Random(1));
+        recommendationEngine.reload();
+        assertThat(userStorage.getRecommendations(1).stream().map(Film::getId).collect(Collectors.toList()))
+                .isEqualTo(sql(1));
+    }
+
+    private void assertMatchesSql(int users) {
+        for (int userId = 1; userId <= users; userId++) {
+            assertThat(recommendationEngine.recommend(userId)).as("user %d", userId).isEqualTo(sql(userId));
+        }
+    }
+
+    private List<List<Integer>> recommendations(int users) {
+        List<List<Integer>> result = new ArrayList<>();
+        for (int userId = 1; userId <= users; userId++) {
+            result.add(recommendationEngine.recommend(userId));
+        }
+        return result;
+    }
+
+    private List<Integer> sql(int userId) {
+        return jdbcTemplate.query(SQL_RECOMMENDATIONS, (rs, rowNum) -> rs.getInt("film_id"), userId);
+    }
+
+    private void seed(int users, int films, int maxLikesPerUser, Random random) {
+        List<Object[]> userRows = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            userRows.add(new Object[]{"user" + i + "@mail.com", "user" + i, "user" + i, Date.valueOf(LocalDate.of(1990, 1, 1))});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)", userRows);
+        List<Object[]> filmRows = new ArrayList<>();
+        for (int i = 1; i <= films; i++) {
+            filmRows.add(new Object[]{"film" + i, "description", Date.valueOf(LocalDate.of(2000, 1, 1)), 100});
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO films (name, description, release_date, duration) VALUES (?, ?, ?, ?)",
+                filmRows);
+        List<Object[]> likes = new ArrayList<>();
+        for (int i = 1; i <= users; i++) {
+            int userId = i;
+            random.ints(1 + random.nextInt(maxLikesPerUser), 1, films + 1).distinct()
+                    .forEach(filmId -> likes.add(new Object[]{filmId, userId}));
+        }
+        jdbcTemplate.batchUpdate("INSERT INTO likes_film (film_id, user_id) VALUES (?, ?)", likes);
+        jdbcTemplate.update("UPDATE films SET like_count = (SELECT COUNT(*) FROM likes_film WHERE film_id = films.id)");
+    }
+}
@@ -0,0 +1,130 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+
+import java.sql.Date;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class RecommendationStoreTest {
+
+    private final RecommendationStore recommendationStore;
+    private final RecommendationEngine recommendationEngine;
+    private final FilmDbStorage filmStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    public void seed() {
+        for (int i = 1; i <= 4; i++) {
+            jdbcTemplate.update("INSERT INTO users (email, login, name, birthday) VALUES (?, ?, ?, ?)",
+                    "user" + i + "@mail.com", "user" + i, "user" + i, Date.valueOf(LocalDate.of(1990, 1, 1)));
+        }
+        for (int i = 1; i <= 6; i++) {
+            jdbcTemplate.update("INSERT INTO films (name, description, release_date, duration) VALUES (?, ?, ?, ?)",
+                    "film" + i, "description", Date.valueOf(LocalDate.of(2000, 1, 1)), 100);
+        }
+        // user 1 has neighbours 2 and 3, user 4 has none
+        int[][] likes = {{1, 1}, {1, 2}, {2, 1}, {2, 2}, {2, 3}, {3, 1}, {3, 4}, {4, 5}};
+        for (int[] like : likes) {
+            jdbcTemplate.update("INSERT INTO likes_film (user_id, film_id) VALUES (?, ?)", like[0], like[1]);
+        }
+        recommendationEngine.reload();
+    }
+
+    @Test
+    public void readsShouldBeServedFromTheStore() {
+        RecommendationStore.Entry entry = recommendationStore.get(1);
+        assertThat(entry.getFilmIds()).containsExactly(3, 4);
+        assertThat(recommendationStore.get(1)).isSameAs(entry);
+
+        filmStorage.addLike(6, 4);
+        assertThat(recommendationStore.get(1)).isSameAs(entry);
+    }
+
+    @Test
+    public void ownAndNeighbourLikesShouldBeVisibleAtOnceByDefault() {
+        RecommendationStore.Entry entry = recommendationStore.get(1);
+
+        filmStorage.addLike(5, 2);
+        RecommendationStore.Entry afterNeighbour = recommendationStore.get(1);
+        assertThat(afterNeighbour).isNotSameAs(entry);
+        assertThat(afterNeighbour.getFilmIds()).containsExactly(3, 5, 4);
+
+        filmStorage.addLike(3, 1);
+        assertThat(recommendationStore.get(1).getFilmIds()).containsExactly(5, 4);
+    }
+
+    @Test
+    public void staleEntriesShouldBeServedWithinTolerance() {
+        RecommendationStore store = new RecommendationStore(recommendationEngine, 1,
+                Duration.ofHours(1), Duration.ofHours(1), Duration.ofHours(1), 1);
+        try {
+            RecommendationStore.Entry entry = store.get(1);
+            assertThat(entry.getFilmIds()).containsExactly(3);
+
+            filmStorage.addLike(5, 2);
+            RecommendationStore.Entry stale = store.get(1);
+            assertThat(stale.isStale()).isTrue();
+            assertThat(stale.getFilmIds()).isEqualTo(entry.getFilmIds());
+            assertThat(stale.getComputedAt()).isEqualTo(entry.getComputedAt());
+
+            // the user's own likes are never served stale
+            filmStorage.addLike(3, 1);
+            RecommendationStore.Entry own = store.get(1);
+            assertThat(own.isStale()).isFalse();
+            assertThat(own.getFilmIds()).containsExactly(5);
+        } finally {
+            store.stop();
+        }
+    }
+
+    @Test
+    public void batchRefreshShouldRecomputeReadStaleEntries() {
+        RecommendationStore.Entry entry = recommendationStore.get(1);
+        assertThat(entry.getFilmIds()).containsExactly(3, 4);
+        recommendationStore.get(3);
+        assertThat(recommendationStore.refreshAll()).isZero();
+
+        // user 2 is a neighbour of users 1 and 3; users 2 and 4 never asked and get no entry
+        filmStorage.addLike(6, 2);
+        assertThat(recommendationStore.refreshAll()).isEqualTo(2);
+        assertThat(recommendationStore.size()).isEqualTo(2);
+        assertThat(recommendationStore.get(1).getFilmIds()).isEqualTo(List.of(3, 6, 4));
+        assertThat(recommendationStore.get(1).getComputedAt()).isAfterOrEqualTo(entry.getComputedAt());
+    }
+
+    @Test
+    public void batchRefreshShouldEvictIdleEntries() throws InterruptedException {
+        RecommendationStore store = new RecommendationStore(recommendationEngine, 1,
+                Duration.ofSeconds(1), Duration.ZERO, Duration.ofHours(1), 1);
+        try {
+            store.get(1);
+            store.get(3);
+            Thread.sleep(600);
+            store.get(3);
+            Thread.sleep(600);
+
+            // user 3 was read within the maximum age and is refreshed, user 1 was not and is evicted
+            assertThat(store.refreshAll()).isEqualTo(1);
+            assertThat(store.size()).isEqualTo(1);
+            assertThat(store.get(1).getFilmIds()).containsExactly(3);
+            assertThat(store.size()).isEqualTo(2);
+        } finally {
+            store.stop();
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.exception.NotFoundException;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.film_attributes.Genre;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReferenceDataRegistryTest {
+
+    private final ReferenceDataRegistry referenceData;
+    private final ReferenceDataEndpoint referenceDataEndpoint;
+    private final FilmDbStorage filmStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void shouldLoadSeededGenresAndMpa() {
+        assertThat(referenceData.getAllGenres()).extracting(Genre::getId).containsExactly(1, 2, 3, 4, 5, 6);
+        assertThat(referenceData.getAllMpa()).extracting(Mpa::getName).containsExactly("G", "PG", "PG-13", "R", "NC-17");
+        assertThat(referenceData.getMpaById(3)).hasFieldOrPropertyWithValue("name", "PG-13");
+
+        assertThatThrownBy(() -> referenceData.getGenreById(7)).isExactlyInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> referenceData.getMpaById(-1)).isExactlyInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void filmsShouldShareRegistryInstances() {
+        Film film = new Film("film", "description", LocalDate.of(2000, 1, 1), 100);
+        film.setMpa(new Mpa("PG", 2));
+        film.setGenres(new ArrayList<>(List.of(new Genre("genre", 1))));
+        filmStorage.addFilm(film);
+
+        Film loaded = filmStorage.getAllFilms().get(0);
+        assertThat(loaded.getMpa()).isSameAs(referenceData.getMpaById(2));
+        assertThat(loaded.getGenres().get(0)).isSameAs(referenceData.getGenreById(1));
+    }
+
+    @Test
+    public void reloadEndpointShouldPickUpTableChanges() {
+        jdbcTemplate.update("INSERT INTO mpa (id, mpa_name) VALUES (6, 'X')");
+        assertThatThrownBy(() -> referenceData.getMpaById(6)).isExactlyInstanceOf(NotFoundException.class);
+
+        assertThat(referenceDataEndpoint.reload()).containsEntry("mpa", 6);
+        assertThat(referenceData.getMpaById(6)).isEqualTo(new Mpa("X", 6));
+    }
+
+    @Test
+    public void reloadEndpointShouldRefreshCachedFilms() {
+        Film film = new Film("film", "description", LocalDate.of(2000, 1, 1), 100);
+        film.setMpa(new Mpa("PG", 2));
+        film.setGenres(new ArrayList<>(List.of(new Genre("genre", 1))));
+        int filmId = filmStorage.addFilm(film).getId();
+        assertThat(filmStorage.getFilmById(filmId).get().getGenres().get(0).getName()).isEqualTo("Комедия");
+
+        jdbcTemplate.update("UPDATE genres SET genre_name = 'Comedy' WHERE genre_id = 1");
+        jdbcTemplate.update("UPDATE mpa SET mpa_name = 'PG-7' WHERE id = 2");
+        referenceDataEndpoint.reload();
+
+        Film cached = filmStorage.getFilmById(filmId).get();
+        assertThat(cached.getGenres().get(0).getName()).isEqualTo("Comedy");
+        assertThat(cached.getMpa().getName()).isEqualTo("PG-7");
+    }
+}
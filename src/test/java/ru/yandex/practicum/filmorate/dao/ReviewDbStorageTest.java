@@ -5,10 +5,13 @@ import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.test.annotation.DirtiesContext;
 import ru.yandex.practicum.filmorate.exception.NotFoundException;
 import ru.yandex.practicum.filmorate.model.Film;
 import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewCursor;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
 import ru.yandex.practicum.filmorate.model.User;
 import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
 import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
@@ -16,8 +19,17 @@ import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
 import ru.yandex.practicum.filmorate.storage.user.UserStorage;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.Optional;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static org.assertj.core.api.AssertionsForClassTypes.assertThat;
 import static org.assertj.core.api.AssertionsForClassTypes.assertThatThrownBy;
@@ -31,6 +43,7 @@ public class ReviewDbStorageTest {
     private final ReviewStorage storage;
     private final UserStorage userStorage;
     private final FilmStorage filmStorage;
+    private final JdbcTemplate jdbcTemplate;
 
     @Test
     public void addShouldBeExceptionIfIncorrectIds(){
@@ -129,7 +142,7 @@ public class ReviewDbStorageTest {
 
         int id = storage.add(review).getId();
 
-        List<Review> reviews = storage.getReviews(100);
+        List<Review> reviews = storage.getReviews(null, 100).getItems();
         Optional<Review> findReview = reviews.stream().filter(r -> r.getId() == id)
                 .findFirst();
         assertThat(findReview).isPresent().get().hasFieldOrPropertyWithValue("content", "Bad movie")
@@ -157,7 +170,7 @@ public class ReviewDbStorageTest {
         storage.add(review);
         storage.add(review1);
 
-        List<Review> reviews = storage.getReviews(1);
+        List<Review> reviews = storage.getReviews(null, 1).getItems();
         assertThat(reviews).isNotNull().asList().hasSize(1);
     }
 
@@ -175,7 +188,7 @@ public class ReviewDbStorageTest {
 
         storage.add(review);
 
-        List<Review> reviewList = storage.getReviewsByFilm(10, 10);
+        List<Review> reviewList = storage.getReviewsByFilm(10, null, 10).getItems();
         assertThat(reviewList).isNotNull().asList().hasSize(0);
 
     }
@@ -193,7 +206,7 @@ public class ReviewDbStorageTest {
 
         storage.add(review);
 
-        List<Review> reviewList = storage.getReviewsByFilm(film.getId(), 2);
+        List<Review> reviewList = storage.getReviewsByFilm(film.getId(), null, 2).getItems();
         assertThat(reviewList).isNotNull().asList().hasSize(1);
     }
 
@@ -227,6 +240,113 @@ public class ReviewDbStorageTest {
 
     }
 
+    @Test
+    public void flippedVoteShouldMoveUsefulByTwo(){
+        Review review = addReview();
+        User user = addUser();
+
+        storage.like(review.getId(), user.getId());
+        storage.like(review.getId(), user.getId());
+        assertThat(storage.get(review.getId()).getUseful()).isEqualTo(1);
+
+        storage.dislike(review.getId(), user.getId());
+        assertThat(storage.get(review.getId()).getUseful()).isEqualTo(-1);
+
+        // deleteLike removes only a like, so the dislike stays
+        storage.deleteLike(review.getId(), user.getId());
+        assertThat(storage.get(review.getId()).getUseful()).isEqualTo(-1);
+
+        storage.like(review.getId(), user.getId());
+        assertThat(storage.get(review.getId()).getUseful()).isEqualTo(1);
+
+        assertThatThrownBy(() -> storage.like(100, user.getId())).isExactlyInstanceOf(NotFoundException.class);
+        assertThatThrownBy(() -> storage.dislike(review.getId(), 100)).isExactlyInstanceOf(NotFoundException.class);
+    }
+
+    @Test
+    public void concurrentVotesShouldKeepUsefulExact() throws Exception {
+        List<Review> reviews = List.of(addReview(), addReview());
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            users.add(addUser());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                Random random = new Random(thread);
+                futures.add(executor.submit(() -> {
+                    // every thread votes for every user, so the same votes are flipped and removed concurrently
+                    for (int i = 0; i < 200; i++) {
+                        int reviewId = reviews.get(random.nextInt(reviews.size())).getId();
+                        int userId = users.get(random.nextInt(users.size())).getId();
+                        switch (random.nextInt(4)) {
+                            case 0: storage.like(reviewId, userId); break;
+                            case 1: storage.dislike(reviewId, userId); break;
+                            case 2: storage.deleteLike(reviewId, userId); break;
+                            default: storage.deleteDislike(reviewId, userId);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        for (Review review : reviews) {
+            Integer grades = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(grade), 0) FROM likes_review WHERE review_id = ?", Integer.class, review.getId());
+            assertThat(storage.get(review.getId()).getUseful()).isEqualTo(grades);
+        }
+    }
+
+    @Test
+    public void pagesShouldFollowEachOtherByUsefulThenId(){
+        List<Film> films = List.of(addFilm(), addFilm());
+        User user = addUser();
+        List<Review> all = new ArrayList<>();
+        for (int i = 0; i < 23; i++) {
+            Review review = new Review();
+            review.setContent("Review " + i);
+            review.setIsPositive(true);
+            review.setFilmId(films.get(i % 2).getId());
+            review.setUserId(user.getId());
+            review = storage.add(review);
+            // few distinct counters, so pages start and end in the middle of a tie
+            review.setUseful(i % 4 - 1);
+            jdbcTemplate.update("UPDATE reviews SET useful = ? WHERE id = ?", review.getUseful(), review.getId());
+            all.add(review);
+        }
+        Comparator<Review> order = Comparator.comparing(Review::getUseful).reversed().thenComparing(Review::getId);
+
+        List<Integer> expected = all.stream().sorted(order).map(Review::getId).collect(Collectors.toList());
+        assertThat(pages(after -> storage.getReviews(after, 4))).isEqualTo(expected);
+
+        int filmId = films.get(1).getId();
+        List<Integer> expectedByFilm = all.stream().filter(review -> review.getFilmId() == filmId).sorted(order)
+                .map(Review::getId).collect(Collectors.toList());
+        assertThat(pages(after -> storage.getReviewsByFilm(filmId, after, 3))).isEqualTo(expectedByFilm);
+
+        ReviewPage page = storage.getReviews(null, 23);
+        assertThat(page.getItems().size()).isEqualTo(23);
+        assertThat(page.getNextCursor()).isNull();
+    }
+
+    private List<Integer> pages(Function<ReviewCursor, ReviewPage> next) {
+        List<Integer> ids = new ArrayList<>();
+        ReviewPage page = next.apply(null);
+        page.getItems().forEach(review -> ids.add(review.getId()));
+        while (page.getNextCursor() != null) {
+            ReviewCursor cursor = ReviewCursor.parse(page.getNextCursor().toString());
+            page = next.apply(cursor);
+            page.getItems().forEach(review -> ids.add(review.getId()));
+        }
+        return ids;
+    }
+
     private Review addReview(){
         Film film = addFilm();
         User user = addUser();
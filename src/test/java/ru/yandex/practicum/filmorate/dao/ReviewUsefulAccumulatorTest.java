@@ -0,0 +1,140 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "filmorate.reviews.useful-accumulator.enabled=true",
+        "filmorate.reviews.useful-accumulator.flush-interval=1h",
+        "filmorate.reviews.useful-accumulator.stripes=4"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class ReviewUsefulAccumulatorTest {
+
+    private final ReviewUsefulAccumulator accumulator;
+    private final ReviewStorage reviewStorage;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void votesShouldBeReadBeforeTheyAreFlushed() {
+        Review review = addReview();
+        User user1 = addUser();
+        User user2 = addUser();
+
+        reviewStorage.like(review.getId(), user1.getId());
+        reviewStorage.like(review.getId(), user2.getId());
+        reviewStorage.dislike(review.getId(), user2.getId());
+
+        assertThat(reviewStorage.get(review.getId()).getUseful()).isEqualTo(0);
+        assertThat(storedUseful(review.getId())).isEqualTo(0);
+        assertThat(accumulator.pending(review.getId())).isEqualTo(0);
+
+        reviewStorage.deleteDislike(review.getId(), user2.getId());
+        assertThat(reviewStorage.get(review.getId()).getUseful()).isEqualTo(1);
+        assertThat(storedUseful(review.getId())).isEqualTo(0);
+
+        accumulator.flush();
+        assertThat(accumulator.size()).isEqualTo(0);
+        assertThat(storedUseful(review.getId())).isEqualTo(1);
+        assertThat(reviewStorage.get(review.getId()).getUseful()).isEqualTo(1);
+    }
+
+    @Test
+    public void concurrentVotesAndFlushesShouldKeepUsefulExact() throws Exception {
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            reviews.add(addReview());
+        }
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            users.add(addUser());
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(9);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                Random random = new Random(thread);
+                futures.add(executor.submit(() -> {
+                    for (int i = 0; i < 200; i++) {
+                        int reviewId = reviews.get(random.nextInt(reviews.size())).getId();
+                        int userId = users.get(random.nextInt(users.size())).getId();
+                        switch (random.nextInt(4)) {
+                            case 0: reviewStorage.like(reviewId, userId); break;
+                            case 1: reviewStorage.dislike(reviewId, userId); break;
+                            case 2: reviewStorage.deleteLike(reviewId, userId); break;
+                            default: reviewStorage.deleteDislike(reviewId, userId);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            AtomicBoolean voting = new AtomicBoolean(true);
+            Future<?> flushes = executor.submit(() -> {
+                while (voting.get()) {
+                    accumulator.flush();
+                }
+            });
+            for (Future<?> future : futures) {
+                future.get(60, TimeUnit.SECONDS);
+            }
+            voting.set(false);
+            flushes.get(10, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        accumulator.flush();
+        for (Review review : reviews) {
+            Integer grades = jdbcTemplate.queryForObject(
+                    "SELECT COALESCE(SUM(grade), 0) FROM likes_review WHERE review_id = ?", Integer.class, review.getId());
+            assertThat(storedUseful(review.getId())).isEqualTo(grades);
+        }
+    }
+
+    private int storedUseful(int reviewId) {
+        return jdbcTemplate.queryForObject("SELECT useful FROM reviews WHERE id = ?", Integer.class, reviewId);
+    }
+
+    private Review addReview() {
+        Film film = new Film("film", "film", LocalDate.of(2000, 1, 1), 120);
+        film.setMpa(new Mpa("G", 1));
+        User user = addUser();
+
+        Review review = new Review();
+        review.setContent("review");
+        review.setIsPositive(true);
+        review.setFilmId(filmStorage.addFilm(film).getId());
+        review.setUserId(user.getId());
+        return reviewStorage.add(review);
+    }
+
+    private User addUser() {
+        return userStorage.addUser(new User("email@yandex.ru", "login", "name", LocalDate.of(1990, 1, 1)));
+    }
+}
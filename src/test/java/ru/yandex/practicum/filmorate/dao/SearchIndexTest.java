@@ -0,0 +1,147 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Director;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Suggestion;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.enums.SuggestionType;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class SearchIndexTest {
+
+    private final SearchIndex searchIndex;
+    private final FilmDbStorage filmStorage;
+    private final DirectorDbStorage directorStorage;
+    private final UserDbStorage userStorage;
+
+    @Test
+    public void shouldFindSubstringsOfTitlesAndDirectors() {
+        Director cameron = addDirector("James Cameron");
+        Director nolan = addDirector("Christopher Nolan");
+        addFilm("The Terminator", cameron);
+        addFilm("Titanic", cameron);
+        addFilm("Interstellar", nolan);
+        addFilm("Tenet", nolan, cameron);
+        userStorage.addUser(new User("a@a.com", "a", "a", LocalDate.of(1990, 1, 1)));
+        filmStorage.addLike(3, 1);
+
+        assertThat(searchIndex.search("TERMIN", true, false)).containsExactly(1);
+        assertThat(searchIndex.search("n", true, false)).containsExactly(3, 1, 2, 4);
+        assertThat(searchIndex.search("te", true, false)).containsExactly(3, 1, 4);
+        assertThat(searchIndex.search("tanic", true, false)).containsExactly(2);
+        // every 3-gram of "sterst" occurs in "Interstellar", but not in a row
+        assertThat(searchIndex.search("sterst", true, false)).isEmpty();
+        assertThat(searchIndex.search("cameron", false, true)).containsExactly(1, 2, 4);
+        assertThat(searchIndex.search("nolan", false, true)).containsExactly(3, 4);
+        assertThat(searchIndex.search("ten", true, true)).containsExactly(4);
+        assertThat(searchIndex.search("e", true, true)).containsExactly(3, 1, 2, 4);
+    }
+
+    @Test
+    public void shouldFollowFilmAndDirectorChanges() {
+        Director director = addDirector("Ridley Scott");
+        Film alien = addFilm("Alien", director);
+        addFilm("Gladiator");
+
+        Film bladeRunner = new Film("Blade Runner", "description", LocalDate.of(2000, 1, 1), 100);
+        bladeRunner.setId(alien.getId());
+        bladeRunner.setMpa(new Mpa("G", 1));
+        filmStorage.updateFilm(bladeRunner);
+        assertThat(searchIndex.search("alien", true, false)).isEmpty();
+        assertThat(searchIndex.search("runner", true, false)).containsExactly(1);
+        assertThat(searchIndex.search("scott", false, true)).isEmpty();
+
+        Film gladiator = filmStorage.getFilmById(2).get();
+        gladiator.setDirectors(Set.of(director));
+        filmStorage.updateFilm(gladiator);
+        director.setName("Sir Ridley");
+        directorStorage.update(director);
+        assertThat(searchIndex.search("scott", false, true)).isEmpty();
+        assertThat(searchIndex.search("sir", false, true)).containsExactly(2);
+
+        directorStorage.delete(director.getId());
+        assertThat(searchIndex.search("sir", false, true)).isEmpty();
+        filmStorage.deleteFilm(1);
+        assertThat(searchIndex.search("runner", true, false)).isEmpty();
+
+        searchIndex.reload();
+        assertThat(searchIndex.search("a", true, false)).containsExactly(2);
+    }
+
+    @Test
+    public void shouldSuggestByWordPrefixMostLikedFirst() {
+        Director cameron = addDirector("James Cameron");
+        Director nolan = addDirector("Christopher Nolan");
+        addFilm("The Terminator", cameron);
+        addFilm("Titanic", cameron);
+        addFilm("Interstellar", nolan);
+        addFilm("Tenet", nolan);
+        userStorage.addUser(new User("a@a.com", "a", "a", LocalDate.of(1990, 1, 1)));
+        userStorage.addUser(new User("b@b.com", "b", "b", LocalDate.of(1990, 1, 1)));
+        filmStorage.addLike(4, 1);
+        filmStorage.addLike(4, 2);
+        filmStorage.addLike(2, 1);
+
+        assertThat(searchIndex.suggest("T", 10, true, false)).extracting(Suggestion::getId).containsExactly(4, 2, 1);
+        assertThat(searchIndex.suggest("term", 10, true, false))
+                .containsExactly(new Suggestion(1, "The Terminator", SuggestionType.FILM));
+        assertThat(searchIndex.suggest("the t", 10, true, false)).extracting(Suggestion::getId).containsExactly(1);
+        assertThat(searchIndex.suggest("erm", 10, true, false)).isEmpty();
+        assertThat(searchIndex.suggest("t", 2, true, true)).extracting(Suggestion::getId).containsExactly(4, 2);
+        assertThat(searchIndex.suggest("c", 10, true, true)).containsExactly(
+                new Suggestion(nolan.getId(), "Christopher Nolan", SuggestionType.DIRECTOR),
+                new Suggestion(cameron.getId(), "James Cameron", SuggestionType.DIRECTOR));
+        assertThat(searchIndex.suggest(" ", 10, true, true)).isEmpty();
+
+        Film film = new Film("Avatar", "description", LocalDate.of(2000, 1, 1), 100);
+        film.setId(2);
+        film.setMpa(new Mpa("G", 1));
+        filmStorage.updateFilm(film);
+        assertThat(searchIndex.suggest("tit", 10, true, false)).isEmpty();
+        assertThat(searchIndex.suggest("av", 10, true, false)).extracting(Suggestion::getName).containsExactly("Avatar");
+        assertThat(searchIndex.suggest("cam", 10, false, true)).extracting(Suggestion::getId)
+                .containsExactly(cameron.getId());
+    }
+
+    @Test
+    public void commonPrefixShouldBeAnsweredFromPopularityRanking() {
+        userStorage.addUser(new User("a@a.com", "a", "a", LocalDate.of(1990, 1, 1)));
+        for (int i = 1; i <= SearchIndex.MAX_COLLECTED + 10; i++) {
+            addFilm("Film " + i);
+        }
+        filmStorage.addLike(200, 1);
+
+        assertThat(searchIndex.suggest("film", 3, true, false)).extracting(Suggestion::getId).containsExactly(200, 1, 2);
+        assertThat(searchIndex.suggest("film 26", 10, true, false)).extracting(Suggestion::getId)
+                .containsExactly(26, 260, 261, 262, 263, 264, 265, 266);
+    }
+
+    private Director addDirector(String name) {
+        Director director = new Director();
+        director.setName(name);
+        return directorStorage.add(director);
+    }
+
+    private Film addFilm(String name, Director... directors) {
+        Film film = new Film(name, "description", LocalDate.of(2000, 1, 1), 100);
+        film.setMpa(new Mpa("G", 1));
+        film.setDirectors(Set.copyOf(List.of(directors)));
+        return filmStorage.addFilm(film);
+    }
+}
@@ -0,0 +1,135 @@
+package ru.yandex.practicum.filmorate.dao;
+
+import lombok.RequiredArgsConstructor;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.jdbc.AutoConfigureTestDatabase;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.annotation.DirtiesContext;
+import ru.yandex.practicum.filmorate.model.Film;
+import ru.yandex.practicum.filmorate.model.Review;
+import ru.yandex.practicum.filmorate.model.ReviewPage;
+import ru.yandex.practicum.filmorate.model.User;
+import ru.yandex.practicum.filmorate.model.film_attributes.Mpa;
+import ru.yandex.practicum.filmorate.storage.film.FilmStorage;
+import ru.yandex.practicum.filmorate.storage.review.ReviewStorage;
+import ru.yandex.practicum.filmorate.storage.user.UserStorage;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.Collectors;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+@SpringBootTest(properties = {
+        "filmorate.reviews.top-cache.head-size=3",
+        "filmorate.reviews.top-cache.max-films=2"})
+@AutoConfigureTestDatabase
+@RequiredArgsConstructor(onConstructor_ = @Autowired)
+@DirtiesContext(classMode = DirtiesContext.ClassMode.AFTER_EACH_TEST_METHOD)
+class TopReviewsCacheTest {
+
+    private final TopReviewsCache cache;
+    private final ReviewStorage reviewStorage;
+    private final UserStorage userStorage;
+    private final FilmStorage filmStorage;
+    private final JdbcTemplate jdbcTemplate;
+
+    @Test
+    public void cachedHeadShouldFollowVotesAddsAndRemovals() {
+        Film film = addFilm();
+        List<User> users = new ArrayList<>();
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            users.add(addUser());
+            reviews.add(addReview(film, users.get(i)));
+        }
+        Random random = new Random(1);
+        for (int i = 0; i < 300; i++) {
+            int reviewId = reviews.get(random.nextInt(reviews.size())).getId();
+            int userId = users.get(random.nextInt(users.size())).getId();
+            switch (random.nextInt(5)) {
+                case 0: reviewStorage.like(reviewId, userId); break;
+                case 1: reviewStorage.dislike(reviewId, userId); break;
+                case 2: reviewStorage.deleteLike(reviewId, userId); break;
+                case 3: reviewStorage.deleteDislike(reviewId, userId); break;
+                default:
+                    if (random.nextBoolean()) {
+                        reviews.add(addReview(film, users.get(random.nextInt(users.size()))));
+                    } else if (reviews.size() > 1) {
+                        reviewStorage.remove(reviews.remove(random.nextInt(reviews.size())).getId());
+                    }
+            }
+            int count = 1 + random.nextInt(3);
+            ReviewPage page = reviewStorage.getReviewsByFilm(film.getId(), null, count);
+            assertThat(ids(page)).as("step %d", i).isEqualTo(storedHead(film.getId(), count));
+        }
+        assertThat(cache.getHits()).isGreaterThan(cache.getMisses());
+    }
+
+    @Test
+    public void updatedContentShouldBeServedFromTheHead() {
+        Film film = addFilm();
+        Review review = addReview(film, addUser());
+        reviewStorage.getReviewsByFilm(film.getId(), null, 3);
+
+        review.setContent("Changed");
+        reviewStorage.update(review);
+        long hits = cache.getHits();
+
+        ReviewPage page = reviewStorage.getReviewsByFilm(film.getId(), null, 3);
+        assertThat(page.getItems().get(0).getContent()).isEqualTo("Changed");
+        assertThat(page.getNextCursor()).isNull();
+        assertThat(cache.getHits()).isEqualTo(hits + 1);
+    }
+
+    @Test
+    public void leastRecentlyReadFilmShouldBeEvicted() {
+        List<Film> films = List.of(addFilm(), addFilm(), addFilm());
+        User user = addUser();
+        for (Film film : films) {
+            addReview(film, user);
+            reviewStorage.getReviewsByFilm(film.getId(), null, 3);
+        }
+        assertThat(cache.size()).isEqualTo(2);
+        assertThat(cache.reviewCount()).isEqualTo(2);
+        assertThat(cache.estimatedBytes()).isPositive();
+        assertThat(cache.get(films.get(0).getId(), 3)).isEmpty();
+        assertThat(cache.get(films.get(2).getId(), 3)).isPresent();
+
+        filmStorage.deleteFilm(films.get(2).getId());
+        assertThat(cache.size()).isEqualTo(1);
+        assertThat(cache.reviewCount()).isEqualTo(1);
+    }
+
+    private List<Integer> ids(ReviewPage page) {
+        return page.getItems().stream().map(Review::getId).collect(Collectors.toList());
+    }
+
+    private List<Integer> storedHead(int filmId, int count) {
+        return jdbcTemplate.queryForList("SELECT id FROM reviews WHERE film_id = ? ORDER BY useful DESC, id LIMIT ?",
+                Integer.class, filmId, count);
+    }
+
+    private Film addFilm() {
+        Film film = new Film("film", "film", LocalDate.of(2000, 1, 1), 120);
+        film.setMpa(new Mpa("G", 1));
+        return filmStorage.addFilm(film);
+    }
+
+    private Review addReview(Film film, User user) {
+        Review review = new Review();
+        review.setContent("review");
+        review.setIsPositive(true);
+        review.setFilmId(film.getId());
+        review.setUserId(user.getId());
+        return reviewStorage.add(review);
+    }
+
+    private User addUser() {
+        return userStorage.addUser(new User("email@yandex.ru", "login", "name", LocalDate.of(1990, 1, 1)));
+    }
+}